@@ -0,0 +1,12 @@
+package org.example.shop.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * 标在只读接口上：配置了从库时，本次请求的非事务查询走从库。
+ * 用户刚有过写请求时仍走主库，保证读到自己刚写的数据。
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ReplicaRead {
+}
@@ -1,17 +1,30 @@
 // src/main/java/org/example/shop/common/JwtUtil.java
 package org.example.shop.common;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @Component
 public class JwtUtil {
 
+    /** 过滤器解析出的 claims 放在 request 属性里，同一请求内不再重复验签 */
+    public static final String CLAIMS_ATTRIBUTE = JwtUtil.class.getName() + ".claims";
+
     // 密钥必须 ≥ 512 bit（64 字节），HS512 要求
     private final SecretKey SECRET_KEY = Keys.hmacShaKeyFor(
             "shop-mini-secret-key-2025-must-be-long-enough-for-hs512-1234567890".getBytes(StandardCharsets.UTF_8)
@@ -20,6 +33,42 @@ public class JwtUtil {
     // 7 天有效期
     private final long EXPIRATION = 1000L * 60 * 60 * 24 * 7;
 
+    // 解析器线程安全，只建一次
+    private final JwtParser parser = Jwts.parserBuilder()
+            .setSigningKey(SECRET_KEY)
+            .build();
+
+    // 已验签 token 缓存：token 的 SHA-256 -> claims，过期时间不超过 token 本身的 exp
+    private final Cache<String, Claims> tokenCache;
+
+    public JwtUtil(@Value("${shop.cache.token.max-size:50000}") long maxSize,
+                   @Value("${shop.cache.token.expire-seconds:600}") long expireSeconds) {
+        long maxTtlNanos = TimeUnit.SECONDS.toNanos(expireSeconds);
+        this.tokenCache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<String, Claims>() {
+                    @Override
+                    public long expireAfterCreate(String key, Claims claims, long currentTime) {
+                        Date exp = claims.getExpiration();
+                        if (exp == null) return maxTtlNanos;
+                        long left = TimeUnit.MILLISECONDS.toNanos(exp.getTime() - System.currentTimeMillis());
+                        return Math.max(0, Math.min(maxTtlNanos, left));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Claims claims, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Claims claims, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
     /** 生成 Token */
     public String generateToken(Long userId, String role) {
         return Jwts.builder()
@@ -31,20 +80,70 @@ public class JwtUtil {
                 .compact();
     }
 
-    /** 安全解析（任何异常都返回 null，不会抛出） */
+    /** 安全解析（任何异常都返回 null，不会抛出），验签结果走缓存 */
     private Claims safeParse(String token) {
+        if (token == null || token.isEmpty()) return null;
+        String key = hash(token);
+        Claims claims = tokenCache.getIfPresent(key);
+        if (claims != null) return claims;
+
+        claims = verify(token);
+        if (claims != null) tokenCache.put(key, claims);
+        return claims;
+    }
+
+    private Claims verify(String token) {
         try {
-            return Jwts.parserBuilder()
-                    .setSigningKey(SECRET_KEY)
-                    .build()
-                    .parseClaimsJws(token)
-                    .getBody();
-        } catch (ExpiredJwtException | UnsupportedJwtException | MalformedJwtException |
-                 SecurityException | IllegalArgumentException e) {
+            return parser.parseClaimsJws(token).getBody();
+        } catch (JwtException | SecurityException | IllegalArgumentException e) {
             return null;   // 所有异常统统吃掉
         }
     }
 
+    private static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public Map<String, Object> cacheStats() {
+        var stats = tokenCache.stats();
+        Map<String, Object> map = new HashMap<>();
+        map.put("size", tokenCache.estimatedSize());
+        map.put("hitCount", stats.hitCount());
+        map.put("missCount", stats.missCount());
+        map.put("hitRate", stats.hitRate());
+        map.put("evictionCount", stats.evictionCount());
+        return map;
+    }
+
+    /** 安全获取全部 claims（一次验签同时拿 userId 和 role，无效返回 null） */
+    public Claims getClaims(String token) {
+        return safeParse(token);
+    }
+
+    /** 从已解析的 claims 中取 userId */
+    public Long getUserId(Claims claims) {
+        try {
+            String sub = claims == null ? null : claims.getSubject();
+            return sub == null ? null : Long.valueOf(sub);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /** 从已解析的 claims 中取 role */
+    public String getRole(Claims claims) {
+        try {
+            return claims == null ? null : claims.get("role", String.class);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
     /** 安全获取 userId */
     public Long getUserId(String token) {
         try {
@@ -1,18 +1,23 @@
 // src/main/java/org/example/shop/config/CurrentUserResolver.java
 package org.example.shop.config;
 
+import io.jsonwebtoken.Claims;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.example.shop.annotation.CurrentUser;
 import org.example.shop.common.JwtUtil;
 import org.example.shop.entity.User;
 import org.example.shop.service.impl.UserServiceImpl;
+import org.springframework.beans.BeanUtils;
 import org.springframework.core.MethodParameter;
 import org.springframework.stereotype.Component;
 import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.RequestAttributes;
 import org.springframework.web.context.request.NativeWebRequest;
 import org.springframework.web.method.support.HandlerMethodArgumentResolver;
 import org.springframework.web.method.support.ModelAndViewContainer;
 
+@Slf4j
 @Component
 @RequiredArgsConstructor
 public class CurrentUserResolver implements HandlerMethodArgumentResolver {
@@ -39,34 +44,36 @@ public class CurrentUserResolver implements HandlerMethodArgumentResolver {
 
         final String token = authHeader.substring(7);
 
-        // 第一步：先从 token 里直接拿 userId 和 role（最保险！）
-        Long userId = jwtUtil.getUserId(token);
-        String roleFromToken = jwtUtil.getRole(token);
+        // 第一步：先从 token 里直接拿 userId 和 role（过滤器已解析过的直接复用）
+        Claims claims = (Claims) webRequest.getAttribute(JwtUtil.CLAIMS_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (claims == null) {
+            claims = jwtUtil.getClaims(token);
+        }
+        Long userId = jwtUtil.getUserId(claims);
+        String roleFromToken = jwtUtil.getRole(claims);
 
-        System.out.println("=== JWT 直接解析结果 ===");
-        System.out.println("userId: " + userId);
-        System.out.println("roleFromToken: " + roleFromToken);
-        System.out.println("=============================");
+        log.debug("JWT 解析结果 userId={}, roleFromToken={}", userId, roleFromToken);
 
         if (userId == null) {
             return null;   // token 无效或过期
         }
 
-        // 第二步：从数据库查完整用户
-        User user = userService.lambdaQuery()
-                .eq(User::getId, userId)
-                .one();
+        // 第二步：查完整用户（本地缓存，用户被修改/删除时失效）
+        User cached = userService.getCachedById(userId);
+        if (cached == null) {
+            return null;
+        }
+        // 缓存里的对象被所有请求共享，复制一份再交给控制器，修改不会串到别的请求
+        User user = new User();
+        BeanUtils.copyProperties(cached, user);
 
         // 第三步：如果数据库 role 是 null，就用 token 里的补上（永不为 null！）
-        if (user != null && user.getRole() == null && roleFromToken != null) {
+        if (user.getRole() == null && roleFromToken != null) {
             user.setRole(roleFromToken);
         }
 
         // 最后打印最终注入的对象
-        System.out.println("=== 最终注入的 User 对象 ===");
-        System.out.println("userId: " + (user != null ? user.getId() : "null"));
-        System.out.println("role: " + (user != null ? user.getRole() : "null"));
-        System.out.println("================================");
+        log.debug("注入 User userId={}, role={}", user.getId(), user.getRole());
 
         return user;
     }
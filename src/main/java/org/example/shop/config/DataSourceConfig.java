@@ -0,0 +1,99 @@
+package org.example.shop.config;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 数据源配置。连接池参数见 application.yml 的 spring.datasource.hikari，
+ * 这里给所有 Hikari 连接池挂上指标统计；配置了 shop.datasource.replicas 时启用读写分离，
+ * 从库沿用主库的连接池参数。
+ */
+@Configuration
+public class DataSourceConfig {
+
+    @Data
+    public static class ReplicaProperties {
+        private String url;
+        private String username;
+        private String password;
+    }
+
+    @Bean
+    public static PoolMetrics poolMetrics() {
+        return new PoolMetrics();
+    }
+
+    /** 在连接池启动（第一次取连接）前设置，之后 Hikari 不允许再修改 */
+    @Bean
+    public static BeanPostProcessor hikariMetricsPostProcessor(PoolMetrics poolMetrics) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof HikariDataSource hikari && hikari.getMetricsTrackerFactory() == null
+                        && hikari.getMetricRegistry() == null) {
+                    hikari.setMetricsTrackerFactory(poolMetrics);
+                }
+                return bean;
+            }
+        };
+    }
+
+    /** 主库，等同于 Spring Boot 默认创建的数据源 */
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean(destroyMethod = "close")
+    public ReadWriteRoutingDataSource routingDataSource(HikariDataSource primaryDataSource, Environment env,
+                                                       @Value("${shop.datasource.replica-down-ms:30000}") long downMillis) {
+        List<ReplicaProperties> replicaProps = Binder.get(env)
+                .bind("shop.datasource.replicas", Bindable.listOf(ReplicaProperties.class))
+                .orElse(Collections.emptyList());
+
+        List<HikariDataSource> replicas = new ArrayList<>();
+        for (int i = 0; i < replicaProps.size(); i++) {
+            ReplicaProperties p = replicaProps.get(i);
+            HikariConfig config = new HikariConfig();
+            primaryDataSource.copyStateTo(config);
+            config.setPoolName(primaryDataSource.getPoolName() + "-replica-" + (i + 1));
+            config.setJdbcUrl(p.getUrl());
+            config.setUsername(p.getUsername() != null ? p.getUsername() : primaryDataSource.getUsername());
+            config.setPassword(p.getPassword() != null ? p.getPassword() : primaryDataSource.getPassword());
+            config.setReadOnly(true);
+            // 从库不可用时不阻塞启动
+            config.setInitializationFailTimeout(-1);
+            replicas.add(new HikariDataSource(config));
+        }
+        return new ReadWriteRoutingDataSource(primaryDataSource, replicas, downMillis);
+    }
+
+    /** 应用使用的数据源：延迟到第一条 SQL 才取连接，此时事务的只读标记已经确定 */
+    @Bean
+    @Primary
+    public DataSource dataSource(ReadWriteRoutingDataSource routingDataSource) {
+        LazyConnectionDataSourceProxy proxy = new LazyConnectionDataSourceProxy(routingDataSource);
+        proxy.setDefaultAutoCommit(true);
+        proxy.setDefaultTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+        return proxy;
+    }
+}
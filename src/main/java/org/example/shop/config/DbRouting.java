@@ -0,0 +1,48 @@
+package org.example.shop.config;
+
+import java.util.function.Supplier;
+
+/**
+ * 当前线程的读库选择：默认主库，onReplica 内的查询可以走从库，onPrimary 内强制主库。
+ * 缓存加载统一走主库，避免把从库的延迟数据缓存下来。
+ */
+public final class DbRouting {
+
+    // null 默认，TRUE 可用从库，FALSE 强制主库
+    private static final ThreadLocal<Boolean> REPLICA = new ThreadLocal<>();
+
+    private DbRouting() {
+    }
+
+    public static boolean replicaPreferred() {
+        return Boolean.TRUE.equals(REPLICA.get());
+    }
+
+    public static <T> T onReplica(Supplier<T> action) {
+        return with(Boolean.TRUE, action);
+    }
+
+    public static <T> T onPrimary(Supplier<T> action) {
+        return with(Boolean.FALSE, action);
+    }
+
+    private static <T> T with(Boolean value, Supplier<T> action) {
+        Boolean previous = REPLICA.get();
+        REPLICA.set(value);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) REPLICA.remove();
+            else REPLICA.set(previous);
+        }
+    }
+
+    /** 请求级别设置，由拦截器在请求结束时 clear */
+    static void preferReplica() {
+        REPLICA.set(Boolean.TRUE);
+    }
+
+    static void clear() {
+        REPLICA.remove();
+    }
+}
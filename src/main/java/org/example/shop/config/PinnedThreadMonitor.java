@@ -0,0 +1,81 @@
+package org.example.shop.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * 虚拟线程钉住（pinning）诊断：订阅 JFR 的 jdk.VirtualThreadPinned 事件，
+ * 按调用位置计数，每个位置第一次出现时打印调用栈，由 /admin/threads/pinned 查看。
+ * 常见原因是在 synchronized 块或本地方法里做了阻塞 IO。
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class PinnedThreadMonitor {
+
+    private static final int STACK_DEPTH = 8;
+
+    private final long thresholdMs;
+
+    // 调用栈 -> 次数
+    private final Map<String, LongAdder> counts = new ConcurrentHashMap<>();
+
+    private RecordingStream stream;
+
+    public PinnedThreadMonitor(@Value("${shop.diagnostics.pinned-threshold-ms:20}") long thresholdMs) {
+        this.thresholdMs = thresholdMs;
+    }
+
+    @PostConstruct
+    public void start() {
+        stream = new RecordingStream();
+        stream.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ofMillis(thresholdMs)).withStackTrace();
+        stream.onEvent("jdk.VirtualThreadPinned", this::onPinned);
+        stream.startAsync();
+        log.info("虚拟线程钉住诊断已开启，阈值 {}ms", thresholdMs);
+    }
+
+    private void onPinned(RecordedEvent event) {
+        String stack = event.getStackTrace() == null ? "unknown" : event.getStackTrace().getFrames().stream()
+                .limit(STACK_DEPTH)
+                .map(PinnedThreadMonitor::format)
+                .collect(Collectors.joining("\n\t"));
+        LongAdder count = counts.computeIfAbsent(stack, k -> new LongAdder());
+        count.increment();
+        if (count.sum() == 1) {
+            log.warn("虚拟线程被钉住 {}ms:\n\t{}", event.getDuration().toMillis(), stack);
+        }
+    }
+
+    private static String format(RecordedFrame frame) {
+        return frame.getMethod().getType().getName() + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+    }
+
+    /** 按次数倒序的调用栈统计 */
+    public Map<String, Long> snapshot() {
+        return counts.entrySet().stream()
+                .sorted((a, b) -> Long.compare(b.getValue().sum(), a.getValue().sum()))
+                .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().sum(), (a, b) -> a, LinkedHashMap::new));
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (stream != null) {
+            stream.close();
+        }
+    }
+}
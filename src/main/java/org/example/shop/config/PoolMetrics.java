@@ -0,0 +1,113 @@
+package org.example.shop.config;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hikari 连接池指标：连接数取自连接池，获取连接耗时、使用时长按固定区间统计直方图。
+ * 不依赖 actuator/micrometer，由 /admin/db/pool 输出。
+ */
+public class PoolMetrics implements MetricsTrackerFactory {
+
+    // 直方图区间上限（毫秒），最后一档为更大的值
+    private static final long[] BUCKETS_MS = {1, 5, 10, 50, 100, 500, 1000, 5000};
+
+    // 连接池名 -> 指标
+    private final Map<String, Tracker> trackers = new ConcurrentHashMap<>();
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        Tracker tracker = new Tracker(poolStats);
+        trackers.put(poolName, tracker);
+        return tracker;
+    }
+
+    /** 所有连接池的当前指标 */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new TreeMap<>();
+        trackers.forEach((name, tracker) -> result.put(name, tracker.snapshot()));
+        return result;
+    }
+
+    private static class Tracker implements IMetricsTracker {
+        final PoolStats stats;
+        final Histogram acquire = new Histogram();
+        final Histogram usage = new Histogram();
+        final LongAdder timeouts = new LongAdder();
+
+        Tracker(PoolStats stats) {
+            this.stats = stats;
+        }
+
+        @Override
+        public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+            acquire.record(elapsedAcquiredNanos / 1000);
+        }
+
+        @Override
+        public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+            usage.record(elapsedBorrowedMillis * 1000);
+        }
+
+        @Override
+        public void recordConnectionTimeout() {
+            timeouts.increment();
+        }
+
+        Map<String, Object> snapshot() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("active", stats.getActiveConnections());
+            map.put("idle", stats.getIdleConnections());
+            map.put("total", stats.getTotalConnections());
+            map.put("waiting", stats.getPendingThreads());
+            map.put("max", stats.getMaxConnections());
+            map.put("min", stats.getMinConnections());
+            map.put("timeouts", timeouts.sum());
+            map.put("acquire", acquire.snapshot());
+            map.put("usage", usage.snapshot());
+            return map;
+        }
+    }
+
+    /** 按微秒记录，按毫秒区间输出 */
+    private static class Histogram {
+        final LongAdder[] buckets = new LongAdder[BUCKETS_MS.length + 1];
+        final LongAdder count = new LongAdder();
+        final LongAdder sumMicros = new LongAdder();
+        final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+        Histogram() {
+            for (int i = 0; i < buckets.length; i++) buckets[i] = new LongAdder();
+        }
+
+        void record(long micros) {
+            int i = 0;
+            while (i < BUCKETS_MS.length && micros > BUCKETS_MS[i] * 1000) i++;
+            buckets[i].increment();
+            count.increment();
+            sumMicros.add(micros);
+            maxMicros.accumulate(micros);
+        }
+
+        Map<String, Object> snapshot() {
+            long n = count.sum();
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("count", n);
+            map.put("meanMs", n == 0 ? 0 : sumMicros.sum() / 1000.0 / n);
+            map.put("maxMs", maxMicros.get() / 1000.0);
+            Map<String, Long> histogram = new LinkedHashMap<>();
+            for (int i = 0; i < BUCKETS_MS.length; i++) {
+                histogram.put("<=" + BUCKETS_MS[i] + "ms", buckets[i].sum());
+            }
+            histogram.put(">" + BUCKETS_MS[BUCKETS_MS.length - 1] + "ms", buckets[BUCKETS_MS.length].sum());
+            map.put("histogram", histogram);
+            return map;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package org.example.shop.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 读写分离数据源。
+ * 只读事务、或 {@link DbRouting} 标记为可用从库且不在写事务中的查询，按轮询取从库连接；
+ * 从库取连接失败时暂停使用一段时间并换下一个，全部不可用时退回主库。
+ * 外面需要包一层 LazyConnectionDataSourceProxy，事务的只读标记设置好后才真正取连接。
+ */
+@Slf4j
+public class ReadWriteRoutingDataSource extends AbstractDataSource implements Closeable {
+
+    private final HikariDataSource primary;
+
+    private final List<Replica> replicas;
+
+    private final long downMillis;
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    public ReadWriteRoutingDataSource(HikariDataSource primary, List<HikariDataSource> replicas, long downMillis) {
+        this.primary = primary;
+        this.replicas = replicas.stream().map(Replica::new).toList();
+        this.downMillis = downMillis;
+    }
+
+    private static class Replica {
+        final HikariDataSource dataSource;
+        volatile long downUntil;
+
+        Replica(HikariDataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+    }
+
+    public boolean hasReplicas() {
+        return !replicas.isEmpty();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (!useReplica()) {
+            return primary.getConnection();
+        }
+        int n = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), n);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < n; i++) {
+            Replica replica = replicas.get((start + i) % n);
+            if (replica.downUntil > now) continue;
+            try {
+                return replica.dataSource.getConnection();
+            } catch (SQLException e) {
+                replica.downUntil = now + downMillis;
+                log.warn("从库 {} 不可用，{}ms 内改用其他库", replica.dataSource.getPoolName(), downMillis, e);
+            }
+        }
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        // 指定账号的连接不做读写分离，直接走主库
+        return primary.getConnection(username, password);
+    }
+
+    private boolean useReplica() {
+        if (replicas.isEmpty()) return false;
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+        }
+        return DbRouting.replicaPreferred();
+    }
+
+    @Override
+    public void close() {
+        replicas.forEach(r -> r.dataSource.close());
+    }
+}
@@ -0,0 +1,71 @@
+package org.example.shop.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.jsonwebtoken.Claims;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.example.shop.annotation.ReplicaRead;
+import org.example.shop.common.JwtUtil;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.time.Duration;
+
+/**
+ * 标了 {@link ReplicaRead} 的接口允许读从库。
+ * 用户发过写请求（非 GET）后的几秒内读请求仍走主库，避免从库延迟导致读不到自己刚提交的数据。
+ */
+@Component
+public class ReplicaReadInterceptor implements HandlerInterceptor {
+
+    private final JwtUtil jwtUtil;
+
+    // 最近写过的用户
+    private final Cache<Long, Boolean> recentWriters;
+
+    public ReplicaReadInterceptor(JwtUtil jwtUtil,
+                                  @Value("${shop.datasource.sticky-seconds:5}") long stickySeconds) {
+        this.jwtUtil = jwtUtil;
+        this.recentWriters = Caffeine.newBuilder()
+                .maximumSize(100_000)
+                .expireAfterWrite(Duration.ofSeconds(stickySeconds))
+                .build();
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!"GET".equals(request.getMethod())) {
+            markWriter(request);
+            return true;
+        }
+        if (handler instanceof HandlerMethod method && method.hasMethodAnnotation(ReplicaRead.class)) {
+            Long userId = userId(request);
+            if (userId == null || recentWriters.getIfPresent(userId) == null) {
+                DbRouting.preferReplica();
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        DbRouting.clear();
+        // 写请求开始和结束各记一次，从写完成时算起保持主库
+        if (!"GET".equals(request.getMethod())) {
+            markWriter(request);
+        }
+    }
+
+    private void markWriter(HttpServletRequest request) {
+        Long userId = userId(request);
+        if (userId != null) recentWriters.put(userId, Boolean.TRUE);
+    }
+
+    private Long userId(HttpServletRequest request) {
+        Object claims = request.getAttribute(JwtUtil.CLAIMS_ATTRIBUTE);
+        return claims instanceof Claims c ? jwtUtil.getUserId(c) : null;
+    }
+}
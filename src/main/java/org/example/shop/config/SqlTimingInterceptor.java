@@ -0,0 +1,67 @@
+package org.example.shop.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * SQL 耗时日志（替代 StdOutImpl 打印全部 SQL）。
+ * 按采样率或慢查询阈值输出，走 SLF4J 异步 appender；两者都关闭时直接放行，没有任何额外开销。
+ */
+@Slf4j
+@Component
+@Intercepts({
+        @Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class}),
+        @Signature(type = Executor.class, method = "query", args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class}),
+        @Signature(type = Executor.class, method = "query", args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class, CacheKey.class, BoundSql.class})
+})
+public class SqlTimingInterceptor implements Interceptor {
+
+    // 采样率 0~1，0 表示不采样
+    @Value("${shop.logging.sql.sample-rate:0}")
+    private double sampleRate;
+
+    // 慢查询阈值（毫秒），0 表示不记录慢查询
+    @Value("${shop.logging.sql.slow-ms:0}")
+    private long slowMs;
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        if (sampleRate <= 0 && slowMs <= 0) {
+            return invocation.proceed();
+        }
+
+        boolean sampled = sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate;
+        long start = System.nanoTime();
+        try {
+            return invocation.proceed();
+        } finally {
+            long costMs = (System.nanoTime() - start) / 1_000_000;
+            boolean slow = slowMs > 0 && costMs >= slowMs;
+            if (sampled || slow) {
+                Object[] args = invocation.getArgs();
+                MappedStatement ms = (MappedStatement) args[0];
+                String sql = args.length == 6
+                        ? ((BoundSql) args[5]).getSql()
+                        : ms.getBoundSql(args[1]).getSql();
+                if (slow) {
+                    log.warn("慢SQL {} {}ms: {}", ms.getId(), costMs, sql.replaceAll("\\s+", " "));
+                } else {
+                    log.info("SQL {} {}ms: {}", ms.getId(), costMs, sql.replaceAll("\\s+", " "));
+                }
+            }
+        }
+    }
+}
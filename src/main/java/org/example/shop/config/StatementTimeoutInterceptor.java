@@ -0,0 +1,38 @@
+package org.example.shop.config;
+
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.example.shop.utils.FanOut;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.Statement;
+
+/**
+ * FanOut 子任务里的 SQL 按剩余时间设置 statement timeout。
+ * 取消子任务只会中断线程，MySQL 驱动阻塞在 socket 读上时不响应中断，查询会继续占着连接；
+ * 设置 queryTimeout 后驱动到点发 KILL QUERY，连接随之归还。JDBC 超时精度是秒，向上取整。
+ */
+@Component
+@Intercepts({
+        @Signature(type = StatementHandler.class, method = "prepare", args = {Connection.class, Integer.class})
+})
+public class StatementTimeoutInterceptor implements Interceptor {
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        Statement statement = (Statement) invocation.proceed();
+        long remainingMs = FanOut.remainingMillis();
+        if (remainingMs >= 0) {
+            int seconds = (int) Math.max((remainingMs + 999) / 1000, 1);
+            int current = statement.getQueryTimeout();
+            if (current == 0 || seconds < current) {
+                statement.setQueryTimeout(seconds);
+            }
+        }
+        return statement;
+    }
+}
@@ -4,6 +4,7 @@ package org.example.shop.config;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 import java.util.List;
@@ -14,8 +15,15 @@ public class WebMvcConfig implements WebMvcConfigurer {
 
     private final CurrentUserResolver currentUserResolver;
 
+    private final ReplicaReadInterceptor replicaReadInterceptor;
+
     @Override
     public void addArgumentResolvers(List<HandlerMethodArgumentResolver> resolvers) {
         resolvers.add(currentUserResolver);   // 这一行就是通关钥匙！
     }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(replicaReadInterceptor);
+    }
 }
\ No newline at end of file
@@ -2,15 +2,24 @@ package org.example.shop.controller;
 
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import lombok.RequiredArgsConstructor;
+import org.example.shop.annotation.ReplicaRead;
+import org.example.shop.common.JwtUtil;
+import org.example.shop.config.PinnedThreadMonitor;
+import org.example.shop.config.PoolMetrics;
 import org.example.shop.common.Result;
 import org.example.shop.entity.*;
+import org.example.shop.event.OrderEventBus;
 import org.example.shop.service.impl.*;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.*;
 
-import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -26,12 +35,19 @@ public class AdminController {
     private final UserServiceImpl userService;
     private final ProductServiceImpl productService;
     private final OrderItemServiceImpl orderItemService;
+    private final StatsServiceImpl statsService;
+    private final ShopDailyStatsServiceImpl dailyStatsService;
+    private final JwtUtil jwtUtil;
+    private final PoolMetrics poolMetrics;
+    private final OrderEventBus orderEventBus;
+    private final ObjectProvider<PinnedThreadMonitor> pinnedThreadMonitor;
 
     // ==================== 用户管理 ====================
 
     /**
      * 用户列表（分页）
      */
+    @ReplicaRead
     @GetMapping("/users")
     public Result userList(
             @RequestParam(defaultValue = "1") Integer page,
@@ -123,6 +139,7 @@ public class AdminController {
     /**
      * 店铺列表（分页）
      */
+    @ReplicaRead
     @GetMapping("/shops")
     public Result shopList(
             @RequestParam(defaultValue = "1") Integer page,
@@ -236,6 +253,7 @@ public class AdminController {
     /**
      * 商品列表（分页）
      */
+    @ReplicaRead
     @GetMapping("/products")
     public Result productList(
             @RequestParam(defaultValue = "1") Integer page,
@@ -246,10 +264,15 @@ public class AdminController {
         page = Math.max(page, 1);
         pageSize = Math.min(Math.max(pageSize, 1), 100);
 
-        LambdaQueryWrapper<Product> query = new LambdaQueryWrapper<>();
+        // 有关键词时走全文索引（按相关度排序）
         if (keyword != null && !keyword.trim().isEmpty()) {
-            query.like(Product::getName, keyword);
+            Map<String, Object> result = productService.search(keyword, shopId, isOnSale, page, pageSize);
+            result.put("page", page);
+            result.put("pageSize", pageSize);
+            return Result.ok(result);
         }
+
+        LambdaQueryWrapper<Product> query = new LambdaQueryWrapper<>();
         if (shopId != null) {
             query.eq(Product::getShopId, shopId);
         }
@@ -285,16 +308,15 @@ public class AdminController {
      */
     @PutMapping("/product/{id}")
     public Result updateProduct(@PathVariable Long id, @RequestBody Product product) {
-        Product existing = productService.getById(id);
-        if (existing == null) {
+        if (productService.getById(id) == null) {
             return Result.fail("商品不存在");
         }
-        if (product.getName() != null) existing.setName(product.getName());
-        if (product.getImage() != null) existing.setImage(product.getImage());
-        if (product.getPrice() != null) existing.setPrice(product.getPrice());
-        if (product.getStock() != null) existing.setStock(product.getStock());
-        if (product.getIsOnSale() != null) existing.setIsOnSale(product.getIsOnSale());
-        productService.updateById(existing);
+        productService.updateColumns(id, new LambdaUpdateWrapper<Product>()
+                .set(product.getName() != null, Product::getName, product.getName())
+                .set(product.getImage() != null, Product::getImage, product.getImage())
+                .set(product.getPrice() != null, Product::getPrice, product.getPrice())
+                .set(product.getStock() != null, Product::getStock, product.getStock())
+                .set(product.getIsOnSale() != null, Product::getIsOnSale, product.getIsOnSale()));
         return Result.ok("更新成功");
     }
 
@@ -315,12 +337,10 @@ public class AdminController {
      */
     @PutMapping("/product/{id}/sale")
     public Result updateProductSale(@PathVariable Long id, @RequestParam Integer isOnSale) {
-        Product product = productService.getById(id);
-        if (product == null) {
+        if (productService.getById(id) == null) {
             return Result.fail("商品不存在");
         }
-        product.setIsOnSale(isOnSale);
-        productService.updateById(product);
+        productService.updateColumns(id, new LambdaUpdateWrapper<Product>().set(Product::getIsOnSale, isOnSale));
         return Result.ok(isOnSale == 1 ? "已上架" : "已下架");
     }
 
@@ -329,6 +349,7 @@ public class AdminController {
     /**
      * 订单列表（分页）
      */
+    @ReplicaRead
     @GetMapping("/orders")
     public Result orderList(
             @RequestParam(defaultValue = "1") Integer page,
@@ -336,7 +357,9 @@ public class AdminController {
             @RequestParam(required = false) String orderNo,
             @RequestParam(required = false) Integer status,
             @RequestParam(required = false) Long shopId,
-            @RequestParam(required = false) Long userId) {
+            @RequestParam(required = false) Long userId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime cursorTime,
+            @RequestParam(required = false) Long cursorId) {
         page = Math.max(page, 1);
         pageSize = Math.min(Math.max(pageSize, 1), 100);
 
@@ -353,12 +376,25 @@ public class AdminController {
         if (userId != null) {
             query.eq(Order::getUserId, userId);
         }
-        query.orderByDesc(Order::getCreateTime);
 
-        Page<Order> orderPage = orderService.page(new Page<>(page, pageSize), query);
+        // 传了游标就走游标分页（不统计总数），否则按页码分页
+        List<Order> records;
+        Long total = null;
+        if (cursorTime != null) {
+            records = orderService.listByKeyset(query, cursorTime, cursorId, pageSize);
+        } else {
+            query.orderByDesc(Order::getCreateTime).orderByDesc(Order::getId);
+            Page<Order> orderPage = orderService.page(new Page<>(page, pageSize), query);
+            records = orderPage.getRecords();
+            total = orderPage.getTotal();
+        }
+
+        // 整页订单的订单项一次查出
+        Map<Long, List<OrderItem>> itemsByOrder = orderItemService.getOrderItemsByOrderIds(
+                records.stream().map(Order::getId).collect(Collectors.toList()));
 
         // 为每个订单添加订单项信息
-        List<Map<String, Object>> orderList = orderPage.getRecords().stream().map(order -> {
+        List<Map<String, Object>> orderList = records.stream().map(order -> {
             Map<String, Object> orderMap = new HashMap<>();
             orderMap.put("id", order.getId());
             orderMap.put("orderNo", order.getOrderNo());
@@ -372,19 +408,17 @@ public class AdminController {
             orderMap.put("createTime", order.getCreateTime());
 
             // 获取订单项
-            List<OrderItem> items = orderItemService.lambdaQuery()
-                    .eq(OrderItem::getOrderId, order.getId())
-                    .list();
-            orderMap.put("items", items);
+            orderMap.put("items", itemsByOrder.getOrDefault(order.getId(), Collections.emptyList()));
 
             return orderMap;
         }).collect(Collectors.toList());
 
         Map<String, Object> result = new HashMap<>();
         result.put("list", orderList);
-        result.put("total", orderPage.getTotal());
+        result.put("total", total);
         result.put("page", page);
         result.put("pageSize", pageSize);
+        OrderServiceImpl.putNextCursor(result, records, pageSize);
         return Result.ok(result);
     }
 
@@ -417,13 +451,19 @@ public class AdminController {
         if (order == null) {
             return Result.fail("订单不存在");
         }
-        order.setStatus(status);
-        if (status == 2) { // 已支付
-            order.setPayTime(LocalDateTime.now());
-        } else if (status == 3) { // 已发货
-            order.setDeliverTime(LocalDateTime.now());
+        if (order.getStatus() == 5) {
+            return Result.fail("订单已取消，不能再修改状态");
+        }
+        if (status == 5) { // 取消，回补库存；以读到的状态为准，并发修改时失败
+            if (!orderService.cancelOrder(id, order.getStatus())) {
+                return Result.fail("订单状态已变化，请刷新后重试");
+            }
+            return Result.ok("状态更新成功");
+        }
+        // 已支付/已发货时间由 changeStatus 自动设置
+        if (!orderService.changeStatus(order, status)) {
+            return Result.fail("订单状态已变化，请刷新后重试");
         }
-        orderService.updateById(order);
         return Result.ok("状态更新成功");
     }
 
@@ -432,94 +472,99 @@ public class AdminController {
      */
     @DeleteMapping("/order/{id}")
     public Result deleteOrder(@PathVariable Long id) {
-        if (orderService.getById(id) == null) {
+        // 订单项、订单和每日汇总在一个事务里处理
+        if (!orderService.deleteOrder(id)) {
             return Result.fail("订单不存在");
         }
-        // 先删除订单项
-        orderItemService.lambdaUpdate()
-                .eq(OrderItem::getOrderId, id)
-                .remove();
-        // 再删除订单
-        orderService.removeById(id);
         return Result.ok("删除成功");
     }
 
     // ==================== 数据统计 ====================
 
+    /**
+     * 本地缓存命中统计
+     */
+    @GetMapping("/cache/stats")
+    public Result cacheStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("product", productService.cacheStats());
+        stats.put("orderCount", orderService.cacheStats());
+        stats.put("user", userService.cacheStats());
+        stats.put("token", jwtUtil.cacheStats());
+        return Result.ok(stats);
+    }
+
+    /**
+     * 数据库连接池状态
+     */
+    @GetMapping("/db/pool")
+    public Result dbPool() {
+        return Result.ok(poolMetrics.snapshot());
+    }
+
+    /**
+     * 虚拟线程被钉住的调用栈统计（仅虚拟线程模式）
+     */
+    @GetMapping("/threads/pinned")
+    public Result pinnedThreads() {
+        PinnedThreadMonitor monitor = pinnedThreadMonitor.getIfAvailable();
+        if (monitor == null) {
+            return Result.fail("未开启虚拟线程模式");
+        }
+        return Result.ok(monitor.snapshot());
+    }
+
+    /**
+     * 订单事件队列状态
+     */
+    @GetMapping("/events/order")
+    public Result orderEvents() {
+        return Result.ok(orderEventBus.metrics());
+    }
+
     /**
      * 数据统计
      */
+    @ReplicaRead
     @GetMapping("/stats")
-    public Result getStats() {
-        Map<String, Object> stats = new HashMap<>();
+    public Result getStats(@RequestParam(defaultValue = "false") Boolean refresh) {
+        // 统计数据由后台定时刷新，refresh=true 时立即重算
+        if (refresh) {
+            statsService.refresh();
+        }
+        return Result.ok(statsService.getSnapshot());
+    }
 
-        // 用户统计
-        long totalUsers = userService.count();
-        long userCount = userService.lambdaQuery().eq(User::getRole, "user").count();
-        long merchantCount = userService.lambdaQuery().eq(User::getRole, "merchant").count();
-        long adminCount = userService.lambdaQuery().eq(User::getRole, "admin").count();
-
-        // 店铺统计
-        long totalShops = shopService.count();
-        long pendingShops = shopService.lambdaQuery().eq(Shop::getStatus, 0).count();
-        long approvedShops = shopService.lambdaQuery().eq(Shop::getStatus, 1).count();
-        long rejectedShops = shopService.lambdaQuery().eq(Shop::getStatus, 2).count();
-
-        // 商品统计
-        long totalProducts = productService.count();
-        long onSaleProducts = productService.lambdaQuery().eq(Product::getIsOnSale, 1).count();
-        long offSaleProducts = productService.lambdaQuery().eq(Product::getIsOnSale, 0).count();
-
-        // 订单统计
-        long totalOrders = orderService.count();
-        long pendingPayOrders = orderService.lambdaQuery().eq(Order::getStatus, 1).count();
-        long pendingDeliverOrders = orderService.lambdaQuery().eq(Order::getStatus, 2).count();
-        long deliveringOrders = orderService.lambdaQuery().eq(Order::getStatus, 3).count();
-        long finishedOrders = orderService.lambdaQuery().eq(Order::getStatus, 4).count();
-        long cancelledOrders = orderService.lambdaQuery().eq(Order::getStatus, 5).count();
-
-        // 销售额统计（已完成订单的总金额）
-        List<Order> finishedOrderList = orderService.lambdaQuery()
-                .eq(Order::getStatus, 4)
-                .list();
-        BigDecimal totalSales = finishedOrderList.stream()
-                .map(Order::getTotalAmount)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-        stats.put("users", Map.of(
-                "total", totalUsers,
-                "user", userCount,
-                "merchant", merchantCount,
-                "admin", adminCount
-        ));
-
-        stats.put("shops", Map.of(
-                "total", totalShops,
-                "pending", pendingShops,
-                "approved", approvedShops,
-                "rejected", rejectedShops
-        ));
-
-        stats.put("products", Map.of(
-                "total", totalProducts,
-                "onSale", onSaleProducts,
-                "offSale", offSaleProducts
-        ));
-
-        stats.put("orders", Map.of(
-                "total", totalOrders,
-                "pendingPay", pendingPayOrders,
-                "pendingDeliver", pendingDeliverOrders,
-                "delivering", deliveringOrders,
-                "finished", finishedOrders,
-                "cancelled", cancelledOrders
-        ));
-
-        stats.put("sales", Map.of(
-                "totalAmount", totalSales,
-                "finishedCount", finishedOrders
-        ));
+    /**
+     * 每日销售趋势：传 shopId 查单个店铺，不传为全部店铺合计；默认最近 30 天，最多 366 天
+     */
+    @ReplicaRead
+    @GetMapping("/stats/daily")
+    public Result getDailyStats(@RequestParam(required = false) Long shopId,
+                                @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        if (to == null) to = LocalDate.now();
+        if (from == null) from = to.minusDays(29);
+        if (from.isAfter(to) || from.plusDays(366).isBefore(to)) {
+            return Result.fail("日期范围不合法，最多查询 366 天");
+        }
+        return Result.ok(shopId != null
+                ? dailyStatsService.daily(shopId, from, to)
+                : dailyStatsService.dailyTotal(from, to));
+    }
 
-        return Result.ok(stats);
+    /**
+     * 从订单表重算每日汇总（后台执行），不传日期时重算全部历史
+     */
+    @PostMapping("/stats/daily/rebuild")
+    public Result rebuildDailyStats(@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                    @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        if (from != null && to != null && from.isAfter(to)) {
+            return Result.fail("日期范围不合法");
+        }
+        if (!dailyStatsService.startBackfill(from, to)) {
+            return Result.fail("正在重算，请稍后再试");
+        }
+        return Result.ok("已开始重算");
     }
-}
\ No newline at end of file
+}
@@ -2,22 +2,33 @@ package org.example.shop.controller;
 
 
 
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.example.shop.annotation.CurrentUser;
+import org.example.shop.annotation.ReplicaRead;
 import org.example.shop.common.Result;
 import org.example.shop.entity.*;
 import org.example.shop.service.impl.OrderItemServiceImpl;
 import org.example.shop.service.impl.OrderServiceImpl;
 import org.example.shop.service.impl.ProductServiceImpl;
+import org.example.shop.service.impl.ShopDailyStatsServiceImpl;
 import org.example.shop.service.impl.ShopServiceImpl;
+import org.example.shop.service.impl.UploadServiceImpl;
+import org.example.shop.utils.FanOut;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 
+@Slf4j
 @RestController
 @RequestMapping("/merchant")
 @RequiredArgsConstructor
@@ -27,7 +38,9 @@ public class MerchantController {
     private final ProductServiceImpl productService;
     private final OrderServiceImpl orderService;
     private final OrderItemServiceImpl orderItemService;
-    private final org.example.shop.utils.OssUtil ossUtil;
+    private final UploadServiceImpl uploadService;
+    private final ShopDailyStatsServiceImpl dailyStatsService;
+    private final FanOut fanOut;
 
 
     @GetMapping("/shops")
@@ -92,8 +105,7 @@ public class MerchantController {
         Shop shop = shopService.getById(p.getShopId());
         if (!shop.getMerchantId().equals(user.getId())) return Result.fail("无权限");
 
-        p.setIsOnSale(0);
-        productService.updateById(p);
+        productService.updateColumns(id, new LambdaUpdateWrapper<Product>().set(Product::getIsOnSale, 0));
         return Result.ok("已下架");
     }
 
@@ -103,24 +115,40 @@ public class MerchantController {
         Shop shop = shopService.lambdaQuery().eq(Shop::getMerchantId, user.getId()).one();
         if (!order.getShopId().equals(shop.getId())) return Result.fail("无权限");
 
-        orderService.lambdaUpdate()
-                .eq(Order::getId, orderId)
-                .set(Order::getStatus, 3)
-                .set(Order::getDeliverTime, LocalDateTime.now())
-                .update();
+        if (!orderService.changeStatus(order, 3)) return Result.fail("订单状态已变化，请刷新后重试");
         return Result.ok("已发货");
     }
 
+    @ReplicaRead
     @GetMapping("/orders")
-    public Result orders(@CurrentUser User user) {
+    public Result orders(
+            @CurrentUser User user,
+            @RequestParam(defaultValue = "20") Integer pageSize,
+            // 下一页传上一页最后一条订单的 createTime 和 id
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime cursorTime,
+            @RequestParam(required = false) Long cursorId) {
+        pageSize = pageSize < 1 ? 20 : Math.min(pageSize, 100);
+        Map<String, Object> result = new HashMap<>();
+        result.put("pageSize", pageSize);
+
         Shop shop = shopService.lambdaQuery().eq(Shop::getMerchantId, user.getId()).one();
-        if (shop == null) return Result.ok(Collections.emptyList());
+        if (shop == null) {
+            result.put("list", Collections.emptyList());
+            OrderServiceImpl.putNextCursor(result, Collections.emptyList(), pageSize);
+            return Result.ok(result);
+        }
 
-        // 查询订单列表
-        List<Order> orders = orderService.lambdaQuery()
-                .eq(Order::getShopId, shop.getId())
-                .orderByDesc(Order::getCreateTime)
-                .list();
+        // 查询订单列表（游标分页，不再一次加载店铺全部订单）
+        List<Order> orders = orderService.listByKeyset(
+                Wrappers.<Order>lambdaQuery().eq(Order::getShopId, shop.getId()),
+                cursorTime, cursorId, pageSize);
+
+        // 所有订单项一次查出；快照缺名称/图片的商品也一次补齐
+        Map<Long, List<OrderItem>> itemsByOrder = orderItemService.getOrderItemsByOrderIds(
+                orders.stream().map(Order::getId).collect(Collectors.toList()));
+        Map<Long, Product> fallbackProducts = loadFallbackProducts(itemsByOrder.values().stream()
+                .flatMap(List::stream)
+                .collect(Collectors.toList()));
 
         // 为每个订单添加订单项信息
         List<Map<String, Object>> orderListWithItems = orders.stream().map(order -> {
@@ -137,7 +165,7 @@ public class MerchantController {
             orderMap.put("deliverTime", order.getDeliverTime());
 
             // 获取订单项信息
-            List<OrderItem> orderItems = orderItemService.getOrderItemsByOrderId(order.getId());
+            List<OrderItem> orderItems = itemsByOrder.getOrDefault(order.getId(), Collections.emptyList());
 
             // 转换订单项格式，确保包含商品信息
             List<Map<String, Object>> itemDetails = orderItems.stream().map(item -> {
@@ -152,7 +180,7 @@ public class MerchantController {
                     itemMap.put("productName", item.getProductName());
                 } else {
                     // 如果订单项中没有商品名称，从商品表查询
-                    Product product = productService.getById(item.getProductId());
+                    Product product = fallbackProducts.get(item.getProductId());
                     if (product != null) {
                         itemMap.put("name", product.getName());
                         itemMap.put("productName", product.getName());
@@ -167,7 +195,7 @@ public class MerchantController {
                     itemMap.put("productImage", item.getProductImage());
                 } else {
                     // 如果订单项中没有商品图片，从商品表查询
-                    Product product = productService.getById(item.getProductId());
+                    Product product = fallbackProducts.get(item.getProductId());
                     if (product != null && product.getImage() != null) {
                         itemMap.put("image", product.getImage());
                         itemMap.put("productImage", product.getImage());
@@ -204,27 +232,58 @@ public class MerchantController {
             return orderMap;
         }).collect(Collectors.toList());
 
-        return Result.ok(orderListWithItems);
+        result.put("list", orderListWithItems);
+        // 下一页游标：hasMore / nextCursorTime / nextCursorId
+        OrderServiceImpl.putNextCursor(result, orders, pageSize);
+        return Result.ok(result);
+    }
+
+    /** 快照里缺商品名称或图片的订单项，对应商品用一次 IN 查询取回 */
+    private Map<Long, Product> loadFallbackProducts(List<OrderItem> items) {
+        List<Long> productIds = items.stream()
+                .filter(item -> item.getProductName() == null || item.getProductName().isEmpty()
+                        || item.getProductImage() == null || item.getProductImage().isEmpty())
+                .map(OrderItem::getProductId)
+                .distinct()
+                .collect(Collectors.toList());
+        return productService.getCachedByIds(productIds);
     }
 
 
     @PostMapping("/upload")
-    public Result uploadImage(@RequestParam("file") MultipartFile file, @CurrentUser User user) {
+    public Result uploadImage(@RequestParam("file") MultipartFile file,
+                              @RequestParam(defaultValue = "false") Boolean async,
+                              @CurrentUser User user) {
         if (file.isEmpty()) {
             return Result.fail("文件为空");
         }
 
         try {
-            // 使用阿里云OSS上传
-            String originalFileName = file.getOriginalFilename();
-            String url = ossUtil.uploadFile(file.getInputStream(), originalFileName);
-            return Result.ok(url);
+            if (async) {
+                // 异步：立即返回任务，结果通过 /upload/{taskId} 查询
+                return Result.ok(uploadService.submit(file, user.getId()));
+            }
+            return Result.ok(uploadService.upload(file));
+        } catch (RejectedExecutionException e) {
+            return Result.fail("上传任务繁忙，请稍后重试");
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("图片上传失败", e);
             return Result.fail("上传失败: " + e.getMessage());
         }
     }
 
+    @GetMapping("/upload/{taskId}")
+    public Result uploadResult(@PathVariable String taskId, @CurrentUser User user) {
+        if (user == null) {
+            return Result.fail("请先登录");
+        }
+        UploadServiceImpl.UploadTask task = uploadService.getTask(taskId, user.getId());
+        if (task == null) {
+            return Result.fail("上传任务不存在或已过期");
+        }
+        return Result.ok(task);
+    }
+
 
     @GetMapping("/shop/info")
     public Result getMyShopInfo(@CurrentUser User user) {
@@ -281,11 +340,11 @@ public class MerchantController {
     @GetMapping("/shop/detail/{id}")
     public Result getShopDetail(@PathVariable Long id, @CurrentUser User user) {
 
+        // 先校验店铺归属，无权限的请求不查商品
         Shop shop = shopService.lambdaQuery()
                 .eq(Shop::getId, id)
                 .eq(Shop::getMerchantId, user.getId())
                 .one();
-
         if (shop == null) {
             return Result.fail("店铺不存在或无权限");
         }
@@ -357,13 +416,12 @@ public class MerchantController {
         }
 
 
-        existingProduct.setName(product.getName());
-        existingProduct.setPrice(product.getPrice());
-
-        existingProduct.setStock(product.getStock());
-        existingProduct.setImage(product.getImage());
-
-        boolean success = productService.updateById(existingProduct);
+        // 只写传入的字段，库存只有显式传了才改
+        boolean success = productService.updateColumns(product.getId(), new LambdaUpdateWrapper<Product>()
+                .set(product.getName() != null, Product::getName, product.getName())
+                .set(product.getPrice() != null, Product::getPrice, product.getPrice())
+                .set(product.getStock() != null, Product::getStock, product.getStock())
+                .set(product.getImage() != null, Product::getImage, product.getImage()));
         if (success) {
             return Result.ok("商品更新成功");
         } else {
@@ -399,6 +457,8 @@ public class MerchantController {
             @RequestParam Long shopId,
             @RequestParam(required = false) String keyword,
             @RequestParam(required = false) Integer status,
+            @RequestParam(defaultValue = "1") Integer page,
+            @RequestParam(defaultValue = "20") Integer pageSize,
             @CurrentUser User user) {
 
         boolean isMyShop = shopService.lambdaQuery()
@@ -408,14 +468,18 @@ public class MerchantController {
 
         if (!isMyShop) return Result.fail("无权限");
 
+        // 有关键词时走全文索引（按相关度排序）
+        if (keyword != null && !keyword.trim().isEmpty()) {
+            page = Math.max(page, 1);
+            pageSize = pageSize < 1 ? 20 : Math.min(pageSize, 100);
+            Map<String, Object> result = productService.search(keyword, shopId, status, page, pageSize);
+            return Result.ok(result.get("list"));
+        }
+
         // 构建查询条件
         var query = productService.lambdaQuery()
                 .eq(Product::getShopId, shopId);
 
-        if (keyword != null && !keyword.trim().isEmpty()) {
-            query.like(Product::getName, keyword.trim());
-        }
-
         if (status != null) {
             query.eq(Product::getIsOnSale, status);
         }
@@ -426,6 +490,7 @@ public class MerchantController {
         return Result.ok(products);
     }
 
+    @ReplicaRead
     @GetMapping("/order/stats")
     public Result getOrderStats(@CurrentUser User user) {
         Shop shop = shopService.lambdaQuery()
@@ -437,42 +502,64 @@ public class MerchantController {
         }
 
         Map<String, Object> stats = new HashMap<>();
-
-        // 待发货订单数量
-        long pendingDelivery = orderService.lambdaQuery()
-                .eq(Order::getShopId, shop.getId())
-                .eq(Order::getStatus, 2) // 假设状态2是待发货
-                .count();
-
-        // 今日订单数量
-        LocalDateTime todayStart = LocalDateTime.now().withHour(0).withMinute(0).withSecond(0);
-        LocalDateTime todayEnd = LocalDateTime.now().withHour(23).withMinute(59).withSecond(59);
-
-        long todayOrders = orderService.lambdaQuery()
-                .eq(Order::getShopId, shop.getId())
-                .between(Order::getCreateTime, todayStart, todayEnd)
-                .count();
-
-        stats.put("pendingDelivery", pendingDelivery);
-        stats.put("todayOrders", todayOrders);
-        stats.put("totalProducts", productService.lambdaQuery()
-                .eq(Product::getShopId, shop.getId())
-                .count());
+        LocalDate today = LocalDate.now();
+
+        // 三个计数互不依赖，并发查询
+        try (FanOut.Scope scope = fanOut.open()) {
+            // 待发货订单数量
+            FanOut.Task<Long> pendingDelivery = scope.fork(() -> orderService.lambdaQuery()
+                    .eq(Order::getShopId, shop.getId())
+                    .eq(Order::getStatus, 2) // 假设状态2是待发货
+                    .count());
+            // 今日订单数读每日汇总的一行
+            FanOut.Task<Long> todayOrders = scope.fork(() -> dailyStatsService.daily(shop.getId(), today, today)
+                    .get(0).getOrders());
+            FanOut.Task<Long> totalProducts = scope.fork(() -> productService.lambdaQuery()
+                    .eq(Product::getShopId, shop.getId())
+                    .count());
+            scope.join();
+
+            stats.put("pendingDelivery", pendingDelivery.get());
+            stats.put("todayOrders", todayOrders.get());
+            stats.put("totalProducts", totalProducts.get());
+        }
 
         return Result.ok(stats);
     }
 
+    /**
+     * 店铺每日销售趋势，默认最近 30 天，最多 366 天
+     */
+    @ReplicaRead
+    @GetMapping("/stats/daily")
+    public Result getDailyStats(@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                @CurrentUser User user) {
+        Shop shop = shopService.lambdaQuery()
+                .eq(Shop::getMerchantId, user.getId())
+                .one();
+        if (shop == null) {
+            return Result.ok(Collections.emptyList());
+        }
+        if (to == null) to = LocalDate.now();
+        if (from == null) from = to.minusDays(29);
+        if (from.isAfter(to) || from.plusDays(366).isBefore(to)) {
+            return Result.fail("日期范围不合法，最多查询 366 天");
+        }
+        return Result.ok(dailyStatsService.daily(shop.getId(), from, to));
+    }
+
     @GetMapping("/order/{id}")
     public Result getOrderDetail(@PathVariable Long id, @CurrentUser User user) {
-        System.out.println("开始查询订单详情，订单ID: " + id + ", 用户ID: " + user.getId());
+        log.debug("开始查询订单详情，订单ID: {}, 用户ID: {}", id, user.getId());
 
         Order order = orderService.getById(id);
         if (order == null) {
-            System.out.println("订单不存在，ID: " + id);
+            log.debug("订单不存在，ID: {}", id);
             return Result.fail("订单不存在");
         }
 
-        System.out.println("找到订单，店铺ID: " + order.getShopId());
+        log.debug("找到订单，店铺ID: {}", order.getShopId());
 
         // 验证权限：确保查询的是自己店铺的订单
         Shop shop = shopService.lambdaQuery()
@@ -481,14 +568,15 @@ public class MerchantController {
                 .one();
 
         if (shop == null) {
-            System.out.println("权限验证失败：用户 " + user.getId() + " 不是店铺 " + order.getShopId() + " 的商家");
+            log.debug("权限验证失败：用户 {} 不是店铺 {} 的商家", user.getId(), order.getShopId());
             return Result.fail("无权限查看该订单");
         }
 
-        System.out.println("权限验证通过，开始查询订单项");
+        log.debug("权限验证通过，开始查询订单项");
 
         // 查询订单项信息
         List<OrderItem> orderItems = orderItemService.getOrderItemsByOrderId(id);
+        Map<Long, Product> fallbackProducts = loadFallbackProducts(orderItems);
 
         // 如果订单项中没有商品信息，需要关联查询商品表
         List<Map<String, Object>> orderItemDetails = orderItems.stream().map(item -> {
@@ -503,7 +591,7 @@ public class MerchantController {
 
             // 如果订单项中没有商品名称或图片，从商品表查询
             if (item.getProductName() == null || item.getProductImage() == null) {
-                Product product = productService.getById(item.getProductId());
+                Product product = fallbackProducts.get(item.getProductId());
                 if (product != null) {
                     itemMap.put("productName", product.getName());
                     itemMap.put("productImage", product.getImage());
@@ -521,7 +609,7 @@ public class MerchantController {
         result.put("order", order);
         result.put("orderItems", orderItemDetails);
 
-        System.out.println("订单详情查询成功，找到 " + orderItemDetails.size() + " 个订单项");
+        log.debug("订单详情查询成功，找到 {} 个订单项", orderItemDetails.size());
         return Result.ok(result);
     }
 
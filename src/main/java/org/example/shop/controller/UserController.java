@@ -1,16 +1,17 @@
 package org.example.shop.controller;
 
-import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import org.example.shop.annotation.CurrentUser;
+import org.example.shop.annotation.ReplicaRead;
 import org.example.shop.common.Result;
 import org.example.shop.entity.*;
 import org.example.shop.service.impl.*;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.*;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -26,24 +27,55 @@ public class UserController {
     private final OrderItemServiceImpl orderItemService;
 
     private final ShopServiceImpl shopService;
+    private final ImageServiceImpl imageService;
 
 
+    @ReplicaRead
     @GetMapping("/products")
-    public Result products() {
-        List<Product> list = productService.lambdaQuery()
-                .eq(Product::getIsOnSale, 1)
-                .list();
-        return Result.ok(list);
+    public Result products(
+            @RequestParam(defaultValue = "new") String sort,   // new / sales / price_asc / price_desc
+            @RequestParam(defaultValue = "1") Integer page,
+            @RequestParam(defaultValue = "20") Integer pageSize,
+            // 游标分页：上一页最后一条的 id，按销量/价格排序时再传它的 sales/price
+            @RequestParam(required = false) String cursorValue,
+            @RequestParam(required = false) Long cursorId) {
+        if (!List.of("new", "sales", "price_asc", "price_desc").contains(sort)) {
+            return Result.fail("排序方式错误");
+        }
+        page = Math.max(page, 1);
+        pageSize = pageSize < 1 ? 20 : Math.min(pageSize, 50);
+
+        try {
+            return Result.ok(productService.listCards(sort, page, pageSize, cursorValue, cursorId));
+        } catch (IllegalArgumentException e) {
+            return Result.fail("游标参数错误");
+        }
     }
 
 
     @PostMapping("/cart/add")
     public Result addCart(@RequestBody Cart cart, @CurrentUser User user) {
-        cart.setUserId(user.getId());
-        cartService.saveOrUpdate(cart,
-                Wrappers.<Cart>lambdaUpdate()
-                        .eq(Cart::getUserId, user.getId())
-                        .eq(Cart::getProductId, cart.getProductId()));
+        if (cart.getProductId() == null || cart.getNum() == null || cart.getNum() < 1) {
+            return Result.fail("参数错误");
+        }
+        cartService.put(user.getId(), cart.getProductId(), cart.getNum());
+        return Result.ok("加入成功");
+    }
+
+    // 批量加入购物车
+    @PostMapping("/cart/batch-add")
+    public Result batchAddCart(@RequestBody List<Cart> items, @CurrentUser User user) {
+        if (items == null || items.isEmpty() || items.size() > 100) {
+            return Result.fail("参数错误");
+        }
+        Map<Long, Integer> nums = new LinkedHashMap<>();
+        for (Cart item : items) {
+            if (item.getProductId() == null || item.getNum() == null || item.getNum() < 1) {
+                return Result.fail("参数错误");
+            }
+            nums.put(item.getProductId(), item.getNum());
+        }
+        cartService.putAll(user.getId(), nums);
         return Result.ok("加入成功");
     }
 
@@ -53,9 +85,7 @@ public class UserController {
     @GetMapping("/cart")
     public Result cart(@CurrentUser User user) {
 
-        List<Cart> cartList = cartService.lambdaQuery()
-                .eq(Cart::getUserId, user.getId())
-                .list();
+        List<Cart> cartList = cartService.getCart(user.getId());
 
         if (cartList.isEmpty()) {
             return Result.ok(Collections.emptyList());
@@ -67,26 +97,21 @@ public class UserController {
                 .collect(Collectors.toList());
 
 
-        List<Product> products = productService.lambdaQuery()
-                .in(Product::getId, productIds)
-                .eq(Product::getIsOnSale, 1)
-                .list();
-
-
-        Map<Long, Product> productMap = products.stream()
-                .collect(Collectors.toMap(Product::getId, p -> p));
+        Map<Long, Product> productMap = productService.getCachedByIds(productIds);
 
 
         List<Map<String, Object>> result = new ArrayList<>();
         for (Cart cart : cartList) {
             Product p = productMap.get(cart.getProductId());
-            if (p == null) continue;
+            if (p == null || p.getIsOnSale() != 1) continue;
 
             Map<String, Object> item = new HashMap<>();
-            item.put("id", cart.getId());
+            // 购物车先写内存，新加的行还没有数据库 id；同一用户购物车里商品唯一，用 productId 作行标识
+            item.put("id", cart.getProductId());
             item.put("productId", p.getId());
             item.put("productName", p.getName());
             item.put("productImage", p.getImage());
+            item.put("productThumbnail", imageService.thumbnailUrl(p.getImage(), 200));
             item.put("price", p.getPrice());
             item.put("num", cart.getNum());
             item.put("checked", true);
@@ -99,84 +124,26 @@ public class UserController {
     // 提交订单 - 终极无敌修复版（再也不会报 shop_id 外键错误！）
     @PostMapping("/order/submit")
     public Result submitOrder(@RequestBody SubmitOrderDTO dto, @CurrentUser User user) {
-        List<Cart> carts = cartService.lambdaQuery()
-                .eq(Cart::getUserId, user.getId())
-                .in(!dto.getProductIds().isEmpty(), Cart::getProductId, dto.getProductIds())
-                .list();
-
-        if (carts.isEmpty()) {
-            return Result.fail("购物车为空或所选商品不存在");
-        }
-
-        Long shopId = null;
-        BigDecimal total = BigDecimal.ZERO;
-
-        for (Cart c : carts) {
-            Product p = productService.getById(c.getProductId());
-            if (p == null || p.getIsOnSale() == 0 || p.getShopId() == null) {
-                return Result.fail("商品已下架或不存在");
-            }
-
-            // 从商品正确获取 shopId
-            if (shopId == null) {
-                shopId = p.getShopId();
-            } else if (!shopId.equals(p.getShopId())) {
-                return Result.fail("暂不支持跨店铺下单");
-            }
-
-            total = total.add(p.getPrice().multiply(BigDecimal.valueOf(c.getNum())));
+        try {
+            String orderNo = orderService.submitOrder(user.getId(), dto.getProductIds(), dto.getAddress());
+            return Result.ok(orderNo);
+        } catch (IllegalArgumentException e) {
+            return Result.fail(e.getMessage());
+        } catch (PessimisticLockingFailureException e) {
+            return Result.fail("下单人数较多，请稍后重试");
         }
-
-        // 保险校验：店铺真的存在
-        if (shopId == null || shopService.getById(shopId) == null) {
-            return Result.fail("店铺不存在或未审核通过");
-        }
-
-        Order order = new Order();
-        order.setOrderNo("ORD" + UUID.randomUUID().toString().substring(0, 12).toUpperCase());
-        order.setUserId(user.getId());
-        order.setShopId(shopId);
-        order.setTotalAmount(total);
-        order.setAddress(dto.getAddress());
-        order.setCreateTime(LocalDateTime.now());
-        order.setStatus(1); // 待支付
-        orderService.save(order);
-
-        // 生成订单项
-        for (Cart c : carts) {
-            Product p = productService.getById(c.getProductId());
-            OrderItem item = new OrderItem();
-            item.setOrderId(order.getId());
-            item.setProductId(p.getId());
-            item.setProductName(p.getName());
-            item.setProductImage(p.getImage());
-            item.setPrice(p.getPrice());
-            item.setNum(c.getNum());
-            orderItemService.save(item);
-        }
-
-        // 清空已下单的购物车商品
-        cartService.lambdaUpdate()
-                .eq(Cart::getUserId, user.getId())
-                .in(Cart::getProductId, dto.getProductIds())
-                .remove();
-
-        return Result.ok(order.getOrderNo());
     }
 
+    @ReplicaRead
     @GetMapping("/product/{id}")
     public Result productDetail(@PathVariable Long id) {
         if (id == null || id <= 0) {
             return Result.fail("商品ID错误");
         }
 
-        Product product = productService.getOne(
-                Wrappers.<Product>lambdaQuery()
-                        .eq(Product::getId, id)
-                        .eq(Product::getIsOnSale, 1)
-        );
+        Product product = productService.getCachedById(id);
 
-        if (product == null) {
+        if (product == null || product.getIsOnSale() != 1) {
             return Result.fail("商品不存在或已下架");
         }
 
@@ -185,6 +152,7 @@ public class UserController {
         return Result.ok(product);
     }
 
+    @ReplicaRead
     @GetMapping("/shop/info/{id}")
     public Result getShopInfo(@PathVariable Long id) {
         Shop shop = shopService.getById(id);
@@ -205,20 +173,14 @@ public class UserController {
         if (productIdObj != null) {
             // 单个删除
             Long productId = Long.valueOf(productIdObj.toString());
-            cartService.lambdaUpdate()
-                    .eq(Cart::getUserId, user.getId())
-                    .eq(Cart::getProductId, productId)
-                    .remove();
+            cartService.remove(user.getId(), List.of(productId));
         } else if (productIdsObj != null) {
             // 批量删除
             List<Long> productIds = ((List<?>) productIdsObj).stream()
                     .map(id -> Long.valueOf(id.toString()))
                     .collect(Collectors.toList());
 
-            cartService.lambdaUpdate()
-                    .eq(Cart::getUserId, user.getId())
-                    .in(Cart::getProductId, productIds)
-                    .remove();
+            cartService.remove(user.getId(), productIds);
         } else {
             return Result.fail("参数错误");
         }
@@ -227,33 +189,49 @@ public class UserController {
     }
 
 
+    @ReplicaRead
     @GetMapping("/order/list")
     public Result orderList(
             @CurrentUser User user,
             @RequestParam(defaultValue = "0") Integer status,   // 0=全部
             @RequestParam(defaultValue = "1") Integer page,
-            @RequestParam(defaultValue = "10") Integer pageSize) {
+            @RequestParam(defaultValue = "10") Integer pageSize,
+            // 游标分页：传上一页返回的 nextCursorTime / nextCursorId 时忽略 page
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime cursorTime,
+            @RequestParam(required = false) Long cursorId) {
 
 
         page = Math.max(page, 1);
         pageSize = pageSize < 1 ? 10 : Math.min(pageSize, 50);
 
         var query = Wrappers.<Order>lambdaQuery()
-                .eq(Order::getUserId, user.getId())
-                .orderByDesc(Order::getCreateTime);
+                .eq(Order::getUserId, user.getId());
 
 
         if (status > 0) {
             query.eq(Order::getStatus, status);
         }
 
-        var orderPage = orderService.page(
-                new com.baomidou.mybatisplus.extension.plugins.pagination.Page<>(page, pageSize),
-                query
-        );
+        List<Order> records;
+        Long total = null;
+        if (cursorTime != null) {
+            records = orderService.listByKeyset(query, cursorTime, cursorId, pageSize);
+        } else {
+            query.orderByDesc(Order::getCreateTime).orderByDesc(Order::getId);
+            var orderPage = orderService.page(
+                    new com.baomidou.mybatisplus.extension.plugins.pagination.Page<>(page, pageSize),
+                    query
+            );
+            records = orderPage.getRecords();
+            total = orderPage.getTotal();
+        }
+
 
+        // 整页订单的订单项一次查出
+        Map<Long, List<OrderItem>> itemsByOrder = orderItemService.getOrderItemsByOrderIds(
+                records.stream().map(Order::getId).collect(Collectors.toList()));
 
-        List<Map<String, Object>> list = orderPage.getRecords().stream().map(order -> {
+        List<Map<String, Object>> list = records.stream().map(order -> {
             Map<String, Object> map = new HashMap<>();
             map.put("orderId", order.getId());
             map.put("orderNo", order.getOrderNo());
@@ -264,15 +242,14 @@ public class UserController {
             map.put("address", order.getAddress());
 
 
-            List<OrderItem> items = orderItemService.lambdaQuery()
-                    .eq(OrderItem::getOrderId, order.getId())
-                    .list();
+            List<OrderItem> items = itemsByOrder.getOrDefault(order.getId(), Collections.emptyList());
 
             List<Map<String, Object>> goods = items.stream().map(item -> {
                 Map<String, Object> g = new HashMap<>();
                 g.put("productId", item.getProductId());
                 g.put("productName", item.getProductName());
                 g.put("productImage", item.getProductImage());
+                g.put("productThumbnail", imageService.thumbnailUrl(item.getProductImage(), 200));
                 g.put("price", item.getPrice());
                 g.put("num", item.getNum());
                 return g;
@@ -286,9 +263,10 @@ public class UserController {
 
         Map<String, Object> result = new HashMap<>();
         result.put("list", list);
-        result.put("total", orderPage.getTotal());
+        result.put("total", total);   // 游标模式下不统计总数，为 null
         result.put("page", page);
         result.put("pageSize", pageSize);
+        OrderServiceImpl.putNextCursor(result, records, pageSize);
 
         return Result.ok(result);
     }
@@ -333,11 +311,7 @@ public class UserController {
         }
 
 
-        boolean success = orderService.lambdaUpdate()
-                .eq(Order::getId, order.getId())
-                .set(Order::getStatus, 2)
-                .set(Order::getPayTime, LocalDateTime.now())
-                .update();
+        boolean success = orderService.changeStatus(order, 2);
 
         if (success) {
             return Result.ok("支付成功！订单号：" + order.getOrderNo());
@@ -353,6 +327,29 @@ public class UserController {
     }
 
 
+    @PostMapping("/order/cancel")
+    public Result cancelOrder(@RequestBody PayDTO dto, @CurrentUser User user) {
+        if (dto.getOrderNo() == null || dto.getOrderNo().isBlank()) {
+            return Result.fail("订单号不能为空");
+        }
+
+        Order order = orderService.lambdaQuery()
+                .eq(Order::getOrderNo, dto.getOrderNo())
+                .eq(Order::getUserId, user.getId())
+                .one();
+
+        if (order == null) {
+            return Result.fail("订单不存在");
+        }
+
+        // 只允许取消待支付订单
+        if (!orderService.cancelOrder(order.getId(), 1)) {
+            return Result.fail("订单状态异常，无法取消");
+        }
+        return Result.ok("订单已取消");
+    }
+
+
     @GetMapping("/info")
     public Result getUserInfo(@CurrentUser User user) {
         Map<String, Object> map = new HashMap<>();
@@ -369,29 +366,13 @@ public class UserController {
     @GetMapping("/order/count")
     public Result orderCount(@CurrentUser User user) {
 
-        long total = orderService.lambdaQuery()
-                .eq(Order::getUserId, user.getId())
-                .count();
-
-        long pending = orderService.lambdaQuery()
-                .eq(Order::getUserId, user.getId())
-                .eq(Order::getStatus, 1)   // 待支付
-                .count();
-
-        long paid = orderService.lambdaQuery()
-                .eq(Order::getUserId, user.getId())
-                .eq(Order::getStatus, 2)   // 待发货
-                .count();
-
-        long delivering = orderService.lambdaQuery()
-                .eq(Order::getUserId, user.getId())
-                .eq(Order::getStatus, 3)   // 待收货
-                .count();
-
-        long finished = orderService.lambdaQuery()
-                .eq(Order::getUserId, user.getId())
-                .eq(Order::getStatus, 4)   // 已完成
-                .count();
+        // 一条 GROUP BY 查出各状态数量
+        Map<Integer, Long> counts = orderService.countByStatus(user.getId());
+        long total = counts.values().stream().mapToLong(Long::longValue).sum();
+        long pending = counts.getOrDefault(1, 0L);      // 待支付
+        long paid = counts.getOrDefault(2, 0L);         // 待发货
+        long delivering = counts.getOrDefault(3, 0L);   // 待收货
+        long finished = counts.getOrDefault(4, 0L);     // 已完成
 
         Map<String, Object> result = new HashMap<>();
         result.put("total", total);
@@ -403,16 +384,21 @@ public class UserController {
         return Result.ok(result);
     }
 
+    @ReplicaRead
     @GetMapping("/products/search")
-    public Result searchProducts(@RequestParam String keyword) {
-        if (keyword == null || keyword.isEmpty()) {
+    public Result searchProducts(
+            @RequestParam String keyword,
+            @RequestParam(defaultValue = "1") Integer page,
+            @RequestParam(defaultValue = "20") Integer pageSize) {
+        if (keyword == null || keyword.trim().isEmpty()) {
             return Result.ok(Collections.emptyList());
         }
-        List<Product> list = productService.list(
-                new QueryWrapper<Product>()
-                        .like("name", keyword)
-        );
-        return Result.ok(list);
+        page = Math.max(page, 1);
+        pageSize = pageSize < 1 ? 20 : Math.min(pageSize, 50);
+
+        // 只搜上架商品，按相关度排序
+        Map<String, Object> result = productService.search(keyword, null, 1, page, pageSize);
+        return Result.ok(result.get("list"));
     }
 
 
@@ -0,0 +1,26 @@
+package org.example.shop.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 订单事件发件箱，和订单修改在同一事务里写入，由 OrderEventBus 的转发线程分发。
+ */
+@Data
+@TableName("order_outbox")
+public class OrderOutbox {
+    @TableId(type = IdType.AUTO)
+    private Long id;
+    private String eventType;
+    private Long orderId;
+    private String payload;       // OrderEvent 的 JSON
+    private Integer status = 0;   // 0待分发 1已分发 2多次失败放弃
+    private Integer attempts = 0;
+    private String lastError;
+    private LocalDateTime createTime;
+    private LocalDateTime processedTime;
+}
@@ -0,0 +1,23 @@
+package org.example.shop.entity;
+
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * 店铺每日销售汇总，主键 (shop_id, stat_date)，按订单创建日期归属。
+ * 订单状态流转时在同一事务里增量更新。
+ */
+@Data
+@TableName("shop_daily_stats")
+public class ShopDailyStats {
+    private Long shopId;
+    private LocalDate statDate;
+    private Long orders = 0L;          // 下单数（含已取消）
+    private Long paidOrders = 0L;      // 已支付且未取消（状态 2/3/4）
+    private Long cancelledOrders = 0L; // 已取消
+    private BigDecimal gmv = BigDecimal.ZERO; // 已支付订单金额
+    private Long itemsSold = 0L;       // 已支付订单的商品件数
+}
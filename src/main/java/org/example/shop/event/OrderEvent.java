@@ -0,0 +1,63 @@
+package org.example.shop.event;
+
+import lombok.Data;
+import org.example.shop.entity.Order;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * 订单状态流转事件，事务提交后由 {@link OrderEventBus} 异步分发。
+ */
+@Data
+public class OrderEvent {
+
+    public enum Type {
+        SUBMITTED,      // 下单
+        PAID,           // 支付
+        DELIVERED,      // 发货
+        COMPLETED,      // 完成（管理员修改）
+        CANCELLED,      // 取消
+        STATUS_CHANGED  // 管理员改成其它状态
+    }
+
+    private Type type;
+    private Long orderId;
+    private String orderNo;
+    private Long userId;
+    private Long shopId;
+    private BigDecimal totalAmount;
+    private Integer fromStatus;   // 新订单为 null
+    private Integer toStatus;
+    private Map<Long, Integer> items; // productId -> 数量，只有下单和取消时带上
+    private LocalDateTime orderCreateTime;
+    private LocalDateTime occurredAt;
+
+    /** 按目标状态确定事件类型 */
+    public static OrderEvent of(Order order, Integer from, int to) {
+        OrderEvent event = new OrderEvent();
+        event.setType(typeOf(from, to));
+        event.setOrderId(order.getId());
+        event.setOrderNo(order.getOrderNo());
+        event.setUserId(order.getUserId());
+        event.setShopId(order.getShopId());
+        event.setTotalAmount(order.getTotalAmount());
+        event.setFromStatus(from);
+        event.setToStatus(to);
+        event.setOrderCreateTime(order.getCreateTime());
+        event.setOccurredAt(LocalDateTime.now());
+        return event;
+    }
+
+    private static Type typeOf(Integer from, int to) {
+        if (from == null) return Type.SUBMITTED;
+        switch (to) {
+            case 2: return Type.PAID;
+            case 3: return Type.DELIVERED;
+            case 4: return Type.COMPLETED;
+            case 5: return Type.CANCELLED;
+            default: return Type.STATUS_CHANGED;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package org.example.shop.event;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.example.shop.entity.OrderOutbox;
+import org.example.shop.mapper.OrderOutboxMapper;
+import org.example.shop.utils.TxUtil;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 订单事件总线（事务发件箱）。
+ * 发布时把事件写进 order_outbox，和订单修改在同一事务里提交，回滚则一起消失；
+ * 提交后唤醒转发线程，转发线程用 FOR UPDATE SKIP LOCKED 锁住一批事件，在同一事务里交给各订阅者并批量标记完成。
+ * 进程在分发中途挂掉时事务回滚，这批事件重启后（或由其它实例）重新分发，不会丢。
+ * 发件箱本身就是缓冲，提交订单的线程不会因为订阅者慢而阻塞，积压量看 {@link #metrics}。
+ */
+@Slf4j
+@Component
+public class OrderEventBus {
+
+    private final OrderOutboxMapper outboxMapper;
+
+    private final ObjectMapper objectMapper;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final ObjectProvider<OrderEventListener> listenerProvider;
+
+    private final int batchSize;
+
+    private final long pollMs;
+
+    private final int maxAttempts;
+
+    private final long retentionHours;
+
+    private final ExecutorService executor;
+
+    // 有新事件提交时唤醒转发线程，没有时按 poll-ms 兜底轮询
+    private final Semaphore wakeup = new Semaphore(0);
+
+    private volatile boolean running = true;
+
+    private List<OrderEventListener> listeners = List.of();
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder dispatched = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final AtomicLong maxLagMs = new AtomicLong();
+
+    public OrderEventBus(OrderOutboxMapper outboxMapper,
+                         ObjectMapper objectMapper,
+                         TransactionTemplate transactionTemplate,
+                         ObjectProvider<OrderEventListener> listenerProvider,
+                         @Value("${shop.order-events.batch-size:200}") int batchSize,
+                         @Value("${shop.order-events.poll-ms:1000}") long pollMs,
+                         @Value("${shop.order-events.max-attempts:10}") int maxAttempts,
+                         @Value("${shop.order-events.retention-hours:72}") long retentionHours) {
+        this.outboxMapper = outboxMapper;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = transactionTemplate;
+        this.listenerProvider = listenerProvider;
+        this.batchSize = batchSize;
+        this.pollMs = pollMs;
+        this.maxAttempts = maxAttempts;
+        this.retentionHours = retentionHours;
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "order-events");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** 在当前事务里写入发件箱，提交后唤醒转发线程；应在修改订单的事务里调用 */
+    public void publish(OrderEvent event) {
+        OrderOutbox row = new OrderOutbox();
+        row.setEventType(event.getType().name());
+        row.setOrderId(event.getOrderId());
+        row.setPayload(toJson(event));
+        row.setCreateTime(event.getOccurredAt());
+        outboxMapper.insert(row);
+        TxUtil.afterCommit(() -> {
+            published.increment();
+            if (wakeup.availablePermits() == 0) wakeup.release();
+        });
+    }
+
+    private String toJson(OrderEvent event) {
+        try {
+            return objectMapper.writeValueAsString(event);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("订单事件序列化失败", e);
+        }
+    }
+
+    // ==================== 转发 ====================
+
+    /** 容器启动完成后再开始转发，订阅者里可以依赖任何 Bean；之前提交的事件留在发件箱里 */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        listeners = listenerProvider.orderedStream().toList();
+        log.info("订单事件转发开始，订阅者 {}", listeners.stream().map(l -> l.getClass().getSimpleName()).toList());
+        executor.execute(this::relayLoop);
+    }
+
+    private void relayLoop() {
+        while (running) {
+            int n;
+            try {
+                n = relayBatch();
+            } catch (Exception e) {
+                // 数据库不可用等，稍后重试
+                log.error("订单事件转发失败", e);
+                n = 0;
+            }
+            if (n >= batchSize) continue; // 还有积压，直接取下一批
+            try {
+                wakeup.tryAcquire(pollMs, TimeUnit.MILLISECONDS);
+                wakeup.drainPermits();
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * 锁住一批事件，分发并标记完成，全部在一个事务里。
+     * 订阅者的数据库写入和完成标记一起提交；整批失败时回滚，再逐条重试找出出错的事件。
+     *
+     * @return 本批事件数
+     */
+    private int relayBatch() {
+        List<Long> failedIds = new ArrayList<>();
+        Integer n = transactionTemplate.execute(status -> {
+            List<OrderOutbox> rows = outboxMapper.claimBatch(batchSize);
+            if (rows.isEmpty()) return 0;
+            List<Long> ids = rows.stream().map(OrderOutbox::getId).toList();
+            try {
+                dispatch(rows);
+            } catch (RuntimeException e) {
+                status.setRollbackOnly();
+                failedIds.addAll(ids);
+                log.warn("订单事件批量分发失败，逐条重试 {} 条: {}", ids.size(), e.getMessage());
+                return ids.size();
+            }
+            outboxMapper.markDone(ids);
+            return ids.size();
+        });
+        failedIds.forEach(this::relayOne);
+        return n == null ? 0 : n;
+    }
+
+    private void relayOne(Long id) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                OrderOutbox row = outboxMapper.claimOne(id);
+                if (row == null) return;
+                dispatch(List.of(row));
+                outboxMapper.markDone(List.of(id));
+            });
+        } catch (RuntimeException e) {
+            failures.increment();
+            String error = String.valueOf(e.getMessage());
+            outboxMapper.markFailed(id, error.length() > 500 ? error.substring(0, 500) : error, maxAttempts);
+            log.error("订单事件分发失败 outboxId={}", id, e);
+        }
+    }
+
+    private void dispatch(List<OrderOutbox> rows) {
+        List<OrderEvent> events = new ArrayList<>(rows.size());
+        for (OrderOutbox row : rows) {
+            try {
+                events.add(objectMapper.readValue(row.getPayload(), OrderEvent.class));
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("订单事件解析失败 outboxId=" + row.getId(), e);
+            }
+        }
+        List<OrderEvent> view = List.copyOf(events);
+        for (OrderEventListener listener : listeners) {
+            listener.onOrderEvents(view);
+        }
+        LocalDateTime oldest = rows.get(0).getCreateTime();
+        if (oldest != null) {
+            maxLagMs.accumulateAndGet(Duration.between(oldest, LocalDateTime.now()).toMillis(), Math::max);
+        }
+        dispatched.add(view.size());
+        batches.increment();
+    }
+
+    /** 定期删除已分发的旧事件，每次最多删 1000 条，避免长事务 */
+    @Scheduled(fixedDelayString = "${shop.order-events.purge-ms:600000}")
+    public void purge() {
+        LocalDateTime before = LocalDateTime.now().minusHours(retentionHours);
+        int total = 0;
+        int n;
+        while ((n = outboxMapper.purgeDone(before, 1000)) > 0) {
+            total += n;
+        }
+        if (total > 0) log.info("清理已分发的订单事件 {} 条", total);
+    }
+
+    // ==================== 指标 ====================
+
+    public Map<String, Object> metrics() {
+        Map<String, Object> m = new HashMap<>();
+        long pending = 0;
+        long failed = 0;
+        Long oldestPendingAgeMs = null;
+        for (Map<String, Object> row : outboxMapper.countUnfinished()) {
+            int status = ((Number) row.get("grp")).intValue();
+            long count = ((Number) row.get("cnt")).longValue();
+            if (status == 0) {
+                pending = count;
+                Object oldest = row.get("oldest");
+                LocalDateTime time = oldest instanceof Timestamp ts ? ts.toLocalDateTime() : (LocalDateTime) oldest;
+                if (time != null) {
+                    oldestPendingAgeMs = Duration.between(time, LocalDateTime.now()).toMillis();
+                }
+            } else {
+                failed = count;
+            }
+        }
+        m.put("pending", pending);
+        m.put("failed", failed);
+        m.put("oldestPendingAgeMs", oldestPendingAgeMs);
+        m.put("published", published.sum());
+        m.put("dispatched", dispatched.sum());
+        m.put("batches", batches.sum());
+        long b = batches.sum();
+        m.put("avgBatchSize", b == 0 ? 0 : (double) dispatched.sum() / b);
+        m.put("listenerFailures", failures.sum());
+        m.put("maxLagMs", maxLagMs.get());
+        return m;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        wakeup.release();
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            executor.shutdownNow();
+        }
+    }
+}
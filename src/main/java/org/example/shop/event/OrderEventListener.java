@@ -0,0 +1,14 @@
+package org.example.shop.event;
+
+import java.util.List;
+
+/**
+ * 订单事件订阅者，注册成 Spring Bean 即可。
+ * 在转发线程里按批调用，同一批内按发布顺序，调用时处于转发事务中：
+ * 订阅者的数据库写入和事件完成标记一起提交，抛出异常时整批回滚后重新分发。
+ * 进程崩溃或失败重试时同一事件可能再次送达，内存里的副作用（缓存、索引）需要可重复执行。
+ */
+public interface OrderEventListener {
+
+    void onOrderEvents(List<OrderEvent> events);
+}
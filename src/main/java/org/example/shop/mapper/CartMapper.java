@@ -2,9 +2,26 @@
 package org.example.shop.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 import org.example.shop.entity.Cart;
 
+import java.util.List;
+
 @Mapper
 public interface CartMapper extends BaseMapper<Cart> {
-}
\ No newline at end of file
+
+    /**
+     * 批量写入购物车项，依赖唯一键 uk_user_product (user_id, product_id)：
+     * 不存在则插入，已存在则把数量设为新值（重复执行结果不变）
+     */
+    @Insert("<script>" +
+            "INSERT INTO cart (user_id, product_id, num, create_time) VALUES " +
+            "<foreach collection='items' item='c' separator=','>" +
+            "(#{c.userId}, #{c.productId}, #{c.num}, #{c.createTime})" +
+            "</foreach> " +
+            "ON DUPLICATE KEY UPDATE num = VALUES(num)" +
+            "</script>")
+    int upsertBatch(@Param("items") List<Cart> items);
+}
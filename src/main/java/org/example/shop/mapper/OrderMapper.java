@@ -3,8 +3,21 @@ package org.example.shop.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
 import org.example.shop.entity.Order;
 
+import java.util.List;
+import java.util.Map;
+
 @Mapper
 public interface OrderMapper extends BaseMapper<Order> {
+
+    /** 按状态分组计数并汇总金额 */
+    @Select("SELECT status AS grp, COUNT(*) AS cnt, IFNULL(SUM(total_amount), 0) AS amount FROM `order` GROUP BY status")
+    List<Map<String, Object>> sumByStatus();
+
+    /** 某个用户的订单按状态分组计数 */
+    @Select("SELECT status AS grp, COUNT(*) AS cnt FROM `order` WHERE user_id = #{userId} GROUP BY status")
+    List<Map<String, Object>> countByStatusOfUser(@Param("userId") Long userId);
 }
\ No newline at end of file
@@ -0,0 +1,36 @@
+package org.example.shop.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.*;
+import org.example.shop.entity.OrderOutbox;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+@Mapper
+public interface OrderOutboxMapper extends BaseMapper<OrderOutbox> {
+
+    /** 锁住最早的一批待分发事件，其它实例跳过这些行取下一批（MySQL 8.0+） */
+    @Select("SELECT * FROM order_outbox WHERE status = 0 ORDER BY id LIMIT #{limit} FOR UPDATE SKIP LOCKED")
+    List<OrderOutbox> claimBatch(@Param("limit") int limit);
+
+    @Select("SELECT * FROM order_outbox WHERE id = #{id} AND status = 0 FOR UPDATE SKIP LOCKED")
+    OrderOutbox claimOne(@Param("id") Long id);
+
+    @Update("<script>UPDATE order_outbox SET status = 1, processed_time = NOW() WHERE id IN " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach></script>")
+    int markDone(@Param("ids") List<Long> ids);
+
+    /** 失败次数加一，达到上限后不再分发（SET 从左到右执行，status 判断的是加一后的次数） */
+    @Update("UPDATE order_outbox SET attempts = attempts + 1, status = IF(attempts >= #{maxAttempts}, 2, 0), " +
+            "last_error = #{error} WHERE id = #{id}")
+    int markFailed(@Param("id") Long id, @Param("error") String error, @Param("maxAttempts") int maxAttempts);
+
+    @Select("SELECT status AS grp, COUNT(*) AS cnt, MIN(create_time) AS oldest FROM order_outbox " +
+            "WHERE status IN (0, 2) GROUP BY status")
+    List<Map<String, Object>> countUnfinished();
+
+    @Delete("DELETE FROM order_outbox WHERE status = 1 AND processed_time < #{before} LIMIT #{limit}")
+    int purgeDone(@Param("before") LocalDateTime before, @Param("limit") int limit);
+}
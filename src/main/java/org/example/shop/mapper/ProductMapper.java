@@ -3,8 +3,28 @@ package org.example.shop.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
 import org.example.shop.entity.Product;
 
+import java.util.List;
+import java.util.Map;
+
 @Mapper
 public interface ProductMapper extends BaseMapper<Product> {
+
+    /** 条件扣减库存，库存不足时影响行数为 0（stock 为 NULL 视为不限库存） */
+    @Update("UPDATE product SET stock = stock - #{num}, sales = IFNULL(sales, 0) + #{num} " +
+            "WHERE id = #{id} AND (stock IS NULL OR stock >= #{num})")
+    int deductStock(@Param("id") Long id, @Param("num") int num);
+
+    /** 回补库存（订单取消） */
+    @Update("UPDATE product SET stock = stock + #{num}, sales = GREATEST(IFNULL(sales, 0) - #{num}, 0) " +
+            "WHERE id = #{id}")
+    int restoreStock(@Param("id") Long id, @Param("num") int num);
+
+    /** 按上架状态分组计数 */
+    @Select("SELECT is_on_sale AS grp, COUNT(*) AS cnt FROM product GROUP BY is_on_sale")
+    List<Map<String, Object>> countByOnSale();
 }
\ No newline at end of file
@@ -0,0 +1,51 @@
+package org.example.shop.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.example.shop.entity.ShopDailyStats;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Mapper
+public interface ShopDailyStatsMapper extends BaseMapper<ShopDailyStats> {
+
+    /** 累加一条增量，行不存在时插入 */
+    @Insert("INSERT INTO shop_daily_stats (shop_id, stat_date, orders, paid_orders, cancelled_orders, gmv, items_sold) " +
+            "VALUES (#{shopId}, #{statDate}, #{orders}, #{paidOrders}, #{cancelledOrders}, #{gmv}, #{itemsSold}) " +
+            "ON DUPLICATE KEY UPDATE orders = orders + VALUES(orders), paid_orders = paid_orders + VALUES(paid_orders), " +
+            "cancelled_orders = cancelled_orders + VALUES(cancelled_orders), gmv = gmv + VALUES(gmv), " +
+            "items_sold = items_sold + VALUES(items_sold)")
+    int addDelta(ShopDailyStats delta);
+
+    /**
+     * 从订单表汇总 [start, end) 内创建的订单。
+     * FOR SHARE 锁住读到的订单行：和订单修改一样先锁订单行再锁汇总行，重算期间这些订单的状态不会变。
+     */
+    @Select("SELECT o.shop_id, DATE(o.create_time) AS stat_date, COUNT(*) AS orders, " +
+            "SUM(o.status IN (2, 3, 4)) AS paid_orders, SUM(o.status = 5) AS cancelled_orders, " +
+            "IFNULL(SUM(CASE WHEN o.status IN (2, 3, 4) THEN o.total_amount END), 0) AS gmv, " +
+            "IFNULL(SUM(CASE WHEN o.status IN (2, 3, 4) THEN " +
+            "(SELECT IFNULL(SUM(i.num), 0) FROM order_item i WHERE i.order_id = o.id) END), 0) AS items_sold " +
+            "FROM `order` o " +
+            "WHERE o.create_time >= #{start} AND o.create_time < #{end} AND o.shop_id IS NOT NULL " +
+            "GROUP BY o.shop_id, DATE(o.create_time) FOR SHARE")
+    List<ShopDailyStats> aggregateRange(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
+
+    @Delete("DELETE FROM shop_daily_stats WHERE stat_date = #{date}")
+    int deleteDate(@Param("date") LocalDate date);
+
+    /** 全部店铺按天合计 */
+    @Select("SELECT stat_date, SUM(orders) AS orders, SUM(paid_orders) AS paid_orders, " +
+            "SUM(cancelled_orders) AS cancelled_orders, SUM(gmv) AS gmv, SUM(items_sold) AS items_sold " +
+            "FROM shop_daily_stats WHERE stat_date BETWEEN #{from} AND #{to} GROUP BY stat_date")
+    List<ShopDailyStats> sumByDate(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    @Select("SELECT MIN(create_time) FROM `order`")
+    LocalDateTime minOrderTime();
+}
@@ -3,8 +3,16 @@ package org.example.shop.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Select;
 import org.example.shop.entity.Shop;
 
+import java.util.List;
+import java.util.Map;
+
 @Mapper
 public interface ShopMapper extends BaseMapper<Shop> {
+
+    /** 按审核状态分组计数 */
+    @Select("SELECT status AS grp, COUNT(*) AS cnt FROM shop GROUP BY status")
+    List<Map<String, Object>> countByStatus();
 }
\ No newline at end of file
@@ -3,10 +3,17 @@ package org.example.shop.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Select;
 import org.example.shop.entity.User;
 
+import java.util.List;
+import java.util.Map;
+
 
 @Mapper
 public interface UserMapper extends BaseMapper<User> {
 
+    /** 按角色分组计数 */
+    @Select("SELECT role AS grp, COUNT(*) AS cnt FROM user GROUP BY role")
+    List<Map<String, Object>> countByRole();
 }
\ No newline at end of file
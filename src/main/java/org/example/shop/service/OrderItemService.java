@@ -2,8 +2,12 @@ package org.example.shop.service;
 
 import com.baomidou.mybatisplus.extension.service.IService;
 import org.example.shop.entity.OrderItem;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public interface OrderItemService extends IService<OrderItem> {
     List<OrderItem> getOrderItemsByOrderId(Long orderId);
-}
\ No newline at end of file
+
+    Map<Long, List<OrderItem>> getOrderItemsByOrderIds(Collection<Long> orderIds);
+}
@@ -0,0 +1,28 @@
+package org.example.shop.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.UUID;
+
+/**
+ * 文件存储。默认阿里云OSS，shop.storage.type=local 时存本地磁盘（私有部署/测试环境）。
+ */
+public interface StorageBackend {
+
+    /**
+     * 保存文件
+     * @param key  存储路径，一般用 {@link #newKey(String)} 生成
+     * @param size 文件大小，未知传 -1
+     * @return 文件访问URL
+     */
+    String save(String key, InputStream in, long size) throws IOException;
+
+    /** 生成存储路径：shop/时间戳_UUID.后缀 */
+    static String newKey(String originalFileName) {
+        String fileExtension = "";
+        if (originalFileName != null && originalFileName.contains(".")) {
+            fileExtension = originalFileName.substring(originalFileName.lastIndexOf("."));
+        }
+        return "shop/" + System.currentTimeMillis() + "_" + UUID.randomUUID().toString().replace("-", "") + fileExtension;
+    }
+}
@@ -2,10 +2,458 @@ package org.example.shop.service.impl;
 
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
 import org.example.shop.entity.Cart;
 import org.example.shop.mapper.CartMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 购物车（写回模式）。
+ * 活跃用户的购物车放在内存里，加购/删除只改内存并记一行本地日志，
+ * 定时把有变化的购物车批量写回 cart 表，关闭时再写一次；
+ * 进程崩溃后启动时重放日志补写。只适用于单实例部署。
+ */
+@Slf4j
 @Service
 public class CartServiceImpl extends ServiceImpl<CartMapper , Cart> implements IService<Cart> {
+
+    private static final String CURRENT_JOURNAL = "current.log";
+
+    private static final int UPSERT_BATCH = 500;
+
+    // userId -> 购物车
+    private final Map<Long, UserCart> carts = new ConcurrentHashMap<>();
+
+    // 有未写回改动的用户
+    private final Set<Long> dirtyUsers = ConcurrentHashMap.newKeySet();
+
+    // 写回串行执行
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    // 日志追加/切换
+    private final ReentrantLock journalLock = new ReentrantLock();
+
+    private final Path journalDir;
+
+    private final boolean journalSync;
+
+    private final long idleMillis;
+
+    private FileChannel journal;
+
+    // 组提交：已写入日志的改动序号（journalLock 保护）和已刷盘的序号
+    private long journalWritten;
+    private volatile long journalSynced;
+
+    // 刷盘串行执行，不占 journalLock，刷盘期间其他线程可以继续追加
+    private final ReentrantLock syncLock = new ReentrantLock();
+
+    public CartServiceImpl(@Value("${shop.cart.journal-dir:data/cart-journal}") String journalDir,
+                           @Value("${shop.cart.journal-sync:true}") boolean journalSync,
+                           @Value("${shop.cart.idle-seconds:600}") long idleSeconds) {
+        this.journalDir = journalDir == null || journalDir.isBlank() ? null : Paths.get(journalDir);
+        this.journalSync = journalSync;
+        this.idleMillis = idleSeconds * 1000;
+    }
+
+    private static class UserCart {
+        final ReentrantLock lock = new ReentrantLock();
+        // productId -> 购物车项，保持加入顺序
+        final Map<Long, Cart> items = new LinkedHashMap<>();
+        // 上次写回后改动过的 productId
+        final Set<Long> dirty = new HashSet<>();
+        volatile long lastAccess = System.currentTimeMillis();
+        // 已从内存移除，持有旧引用的线程需要重新获取
+        boolean evicted;
+    }
+
+    // ==================== 读写 ====================
+
+    /** 用户购物车（副本） */
+    public List<Cart> getCart(Long userId) {
+        UserCart cart = load(userId);
+        cart.lock.lock();
+        try {
+            return cart.items.values().stream().map(CartServiceImpl::copy).collect(Collectors.toList());
+        } finally {
+            cart.lock.unlock();
+        }
+    }
+
+    /** 加入购物车，已存在则设置为新数量 */
+    public void put(Long userId, Long productId, int num) {
+        change(userId, Collections.singletonMap(productId, num));
+    }
+
+    /** 批量加入购物车（productId -> 数量），一次加锁、一次写日志 */
+    public void putAll(Long userId, Map<Long, Integer> items) {
+        if (items == null || items.isEmpty()) return;
+        change(userId, items);
+    }
+
+    /** 从购物车移除 */
+    public void remove(Long userId, Collection<Long> productIds) {
+        if (productIds == null || productIds.isEmpty()) return;
+        Map<Long, Integer> changes = new LinkedHashMap<>();
+        productIds.forEach(id -> changes.put(id, 0));
+        change(userId, changes);
+    }
+
+    /** 数量为 0 表示删除 */
+    private void change(Long userId, Map<Long, Integer> changes) {
+        while (true) {
+            UserCart cart = load(userId);
+            long seq;
+            cart.lock.lock();
+            try {
+                if (cart.evicted) continue;
+                apply(cart, changes);
+                dirtyUsers.add(userId);
+                cart.lastAccess = System.currentTimeMillis();
+                seq = appendJournal(userId, changes);
+            } finally {
+                cart.lock.unlock();
+            }
+            // 在购物车锁外等刷盘，同一用户的并发改动也能合并进一次 fsync
+            awaitJournalSync(seq);
+            return;
+        }
+    }
+
+    private static void apply(UserCart cart, Map<Long, Integer> changes) {
+        changes.forEach((productId, num) -> {
+            if (num <= 0) {
+                if (cart.items.remove(productId) == null) return;
+            } else {
+                Cart item = cart.items.get(productId);
+                if (item == null) {
+                    item = new Cart();
+                    item.setProductId(productId);
+                    item.setCreateTime(LocalDateTime.now());
+                    cart.items.put(productId, item);
+                }
+                item.setNum(num);
+            }
+            cart.dirty.add(productId);
+        });
+    }
+
+    private UserCart load(Long userId) {
+        UserCart cart = carts.get(userId);
+        if (cart != null) {
+            cart.lastAccess = System.currentTimeMillis();
+            return cart;
+        }
+        UserCart loaded = new UserCart();
+        for (Cart c : lambdaQuery().eq(Cart::getUserId, userId).orderByAsc(Cart::getId).list()) {
+            loaded.items.putIfAbsent(c.getProductId(), c);
+        }
+        cart = carts.putIfAbsent(userId, loaded);
+        return cart != null ? cart : loaded;
+    }
+
+    // ==================== 写回 ====================
+
+    @Scheduled(fixedDelayString = "${shop.cart.flush-ms:1000}", initialDelayString = "${shop.cart.flush-ms:1000}")
+    public void scheduledFlush() {
+        flush();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+        journalLock.lock();
+        try {
+            closeJournal();
+        } finally {
+            journalLock.unlock();
+        }
+    }
+
+    /**
+     * 把所有改动写回数据库。
+     * 先切换日志文件，成功写回后删除切出来的旧日志；失败时改动留在内存，下次重试。
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            List<Path> rolled = rotateJournal();
+            if (flushDirty()) {
+                for (Path path : rolled) {
+                    Files.deleteIfExists(path);
+                }
+            }
+            evictIdle();
+        } catch (IOException e) {
+            log.error("删除购物车日志失败", e);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private boolean flushDirty() {
+        if (dirtyUsers.isEmpty()) return true;
+
+        // 每个用户取出改动快照：productId -> 购物车项副本，null 表示已删除
+        Map<Long, Map<Long, Cart>> snapshots = new HashMap<>();
+        for (Iterator<Long> it = dirtyUsers.iterator(); it.hasNext(); ) {
+            Long userId = it.next();
+            it.remove();
+            UserCart cart = carts.get(userId);
+            if (cart == null) continue;
+            cart.lock.lock();
+            try {
+                Map<Long, Cart> changes = new HashMap<>();
+                for (Long productId : cart.dirty) {
+                    Cart item = cart.items.get(productId);
+                    changes.put(productId, item == null ? null : copy(item));
+                }
+                cart.dirty.clear();
+                if (!changes.isEmpty()) snapshots.put(userId, changes);
+            } finally {
+                cart.lock.unlock();
+            }
+        }
+        if (snapshots.isEmpty()) return true;
+
+        List<Cart> upserts = new ArrayList<>();
+        try {
+            snapshots.forEach((userId, changes) -> {
+                List<Long> removed = new ArrayList<>();
+                changes.forEach((productId, item) -> {
+                    if (item == null) {
+                        removed.add(productId);
+                    } else {
+                        item.setUserId(userId);
+                        upserts.add(item);
+                    }
+                });
+                if (!removed.isEmpty()) {
+                    lambdaUpdate().eq(Cart::getUserId, userId).in(Cart::getProductId, removed).remove();
+                }
+            });
+            // 新增和修改合并成多行 INSERT ... ON DUPLICATE KEY UPDATE
+            for (int i = 0; i < upserts.size(); i += UPSERT_BATCH) {
+                baseMapper.upsertBatch(upserts.subList(i, Math.min(i + UPSERT_BATCH, upserts.size())));
+            }
+        } catch (Exception e) {
+            log.error("购物车写回失败，{} 个用户的改动留待下次重试", snapshots.size(), e);
+            snapshots.forEach((userId, changes) -> markDirty(userId, changes.keySet()));
+            return false;
+        }
+
+        log.debug("购物车写回：{} 个用户，写入 {} 项", snapshots.size(), upserts.size());
+        return true;
+    }
+
+    private void markDirty(Long userId, Collection<Long> productIds) {
+        UserCart cart = carts.get(userId);
+        if (cart == null) return;
+        cart.lock.lock();
+        try {
+            cart.dirty.addAll(productIds);
+            dirtyUsers.add(userId);
+        } finally {
+            cart.lock.unlock();
+        }
+    }
+
+    /** 移出长时间未访问且已写回的购物车 */
+    private void evictIdle() {
+        long deadline = System.currentTimeMillis() - idleMillis;
+        for (Map.Entry<Long, UserCart> entry : carts.entrySet()) {
+            UserCart cart = entry.getValue();
+            if (cart.lastAccess > deadline) continue;
+            cart.lock.lock();
+            try {
+                if (cart.dirty.isEmpty() && cart.lastAccess <= deadline) {
+                    cart.evicted = true;
+                    carts.remove(entry.getKey(), cart);
+                }
+            } finally {
+                cart.lock.unlock();
+            }
+        }
+    }
+
+    // ==================== 日志 ====================
+    // 每行 "userId productId num"，num 是改动后的数量（0 表示删除），重放时后写的覆盖先写的
+
+    /** 追加日志（只写到页缓存），返回本次写入的序号，没写日志时返回 0 */
+    private long appendJournal(Long userId, Map<Long, Integer> changes) {
+        if (journalDir == null) return 0;
+        StringBuilder lines = new StringBuilder();
+        changes.forEach((productId, num) ->
+                lines.append(userId).append(' ').append(productId).append(' ').append(Math.max(num, 0)).append('\n'));
+        journalLock.lock();
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                openJournal().write(buffer);
+            }
+            return ++journalWritten;
+        } catch (IOException e) {
+            // 改动仍在内存中，下次写回时落库，只是崩溃时可能丢失
+            log.error("写购物车日志失败", e);
+            return 0;
+        } finally {
+            journalLock.unlock();
+        }
+    }
+
+    /**
+     * 组提交：等到序号 seq 之前的日志都已刷盘。
+     * 拿到 syncLock 的线程一次 force 覆盖此前所有线程写入的内容，排队的线程醒来发现已经刷过就直接返回，
+     * 并发下单时 fsync 次数远少于改动次数，也不再在 journalLock 里刷盘挡住其他追加。
+     */
+    private void awaitJournalSync(long seq) {
+        if (!journalSync || seq == 0 || journalSynced >= seq) return;
+        syncLock.lock();
+        try {
+            if (journalSynced >= seq) return;
+            FileChannel channel;
+            long target;
+            journalLock.lock();
+            try {
+                channel = journal;
+                target = journalWritten;
+            } finally {
+                journalLock.unlock();
+            }
+            if (channel != null) channel.force(false);
+            journalSynced = Math.max(journalSynced, target);
+        } catch (IOException e) {
+            // 刷盘期间日志被切换（切换前已刷盘）时 channel 已关闭，不算失败
+            if (journalSynced < seq) log.error("购物车日志刷盘失败", e);
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    private FileChannel openJournal() throws IOException {
+        if (journal == null) {
+            Files.createDirectories(journalDir);
+            journal = FileChannel.open(journalDir.resolve(CURRENT_JOURNAL),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        return journal;
+    }
+
+    private void closeJournal() {
+        if (journal == null) return;
+        if (journalSync) {
+            // 切换/关闭前刷盘，等待中的线程看到已刷盘的序号后直接返回
+            try {
+                journal.force(false);
+                journalSynced = journalWritten;
+            } catch (IOException e) {
+                log.error("购物车日志刷盘失败", e);
+            }
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            log.warn("关闭购物车日志失败", e);
+        }
+        journal = null;
+    }
+
+    /** 当前日志改名为编号文件，返回所有待删除的编号日志（包括之前写回失败留下的） */
+    private List<Path> rotateJournal() {
+        if (journalDir == null) return Collections.emptyList();
+        journalLock.lock();
+        try {
+            closeJournal();
+            Path current = journalDir.resolve(CURRENT_JOURNAL);
+            List<Path> rolled = rolledJournals();
+            if (Files.exists(current) && Files.size(current) > 0) {
+                long seq = rolled.isEmpty() ? 1 : sequenceOf(rolled.get(rolled.size() - 1)) + 1;
+                Path target = journalDir.resolve(seq + ".log");
+                Files.move(current, target, StandardCopyOption.ATOMIC_MOVE);
+                rolled.add(target);
+            }
+            return rolled;
+        } catch (IOException e) {
+            log.error("切换购物车日志失败", e);
+            return Collections.emptyList();
+        } finally {
+            journalLock.unlock();
+        }
+    }
+
+    private List<Path> rolledJournals() throws IOException {
+        if (!Files.isDirectory(journalDir)) return new ArrayList<>();
+        try (Stream<Path> files = Files.list(journalDir)) {
+            return files.filter(p -> p.getFileName().toString().matches("\\d+\\.log"))
+                    .sorted(Comparator.comparingLong(CartServiceImpl::sequenceOf))
+                    .collect(Collectors.toCollection(ArrayList::new));
+        }
+    }
+
+    private static long sequenceOf(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - ".log".length()));
+    }
+
+    /** 启动时重放上次未写回的日志 */
+    @PostConstruct
+    public void recover() {
+        if (journalDir == null) return;
+        try {
+            List<Path> files = rolledJournals();
+            Path current = journalDir.resolve(CURRENT_JOURNAL);
+            if (Files.exists(current)) files.add(current);
+            if (files.isEmpty()) return;
+
+            // userId -> (productId -> 最终数量)
+            Map<Long, Map<Long, Integer>> pending = new LinkedHashMap<>();
+            for (Path file : files) {
+                try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        String[] parts = line.trim().split(" ");
+                        if (parts.length != 3) continue;   // 崩溃时写了一半的行
+                        pending.computeIfAbsent(Long.valueOf(parts[0]), k -> new LinkedHashMap<>())
+                                .put(Long.valueOf(parts[1]), Integer.valueOf(parts[2]));
+                    }
+                }
+            }
+            pending.forEach((userId, changes) -> {
+                UserCart cart = load(userId);
+                apply(cart, changes);
+                dirtyUsers.add(userId);
+            });
+            log.info("重放购物车日志 {} 个文件，{} 个用户", files.size(), pending.size());
+            flush();
+        } catch (IOException | RuntimeException e) {
+            log.error("重放购物车日志失败，日志文件保留待下次启动处理", e);
+        }
+    }
+
+    private static Cart copy(Cart source) {
+        Cart cart = new Cart();
+        cart.setId(source.getId());
+        cart.setUserId(source.getUserId());
+        cart.setProductId(source.getProductId());
+        cart.setNum(source.getNum());
+        cart.setCreateTime(source.getCreateTime());
+        return cart;
+    }
 }
@@ -0,0 +1,328 @@
+package org.example.shop.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.shop.service.StorageBackend;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 图片缩略图。
+ * 上传的图片存到 shop/i/ 下，后台线程按配置的宽度生成缩略图存到 shop/i/w{宽度}/ 下，
+ * 列表接口用 {@link #thumbnailUrl} 换成缩略图地址（旧图片没有缩略图，原样返回）。
+ * 本地存储模式下缩略图目录按 LRU 限制总大小，被淘汰或缺失的缩略图访问时从原图重新生成。
+ */
+@Slf4j
+@Service
+public class ImageServiceImpl {
+
+    public static final String IMAGE_PREFIX = "shop/i/";
+
+    private static final Pattern THUMB_KEY = Pattern.compile("^shop/i/w(\\d+)/(.+)$");
+
+    private static final Set<String> SUPPORTED = Set.of("jpg", "jpeg", "png", "bmp", "gif");
+
+    private final StorageBackend storage;
+
+    private final LocalStorageBackend localStorage;
+
+    private final boolean localMode;
+
+    private final List<Integer> widths;
+
+    private final long cacheMaxBytes;
+
+    private final long maxPixels;
+
+    private final ThreadPoolExecutor executor;
+
+    // 本地缩略图 LRU：文件 -> 大小
+    private final LinkedHashMap<Path, Long> localThumbs = new LinkedHashMap<>(256, 0.75f, true);
+
+    private final ReentrantLock lruLock = new ReentrantLock();
+
+    private long localThumbBytes;
+
+    public ImageServiceImpl(StorageBackend storage,
+                            LocalStorageBackend localStorage,
+                            @Value("${shop.image.thumb-widths:200,400,800}") List<Integer> widths,
+                            @Value("${shop.image.local-cache-max-mb:512}") long cacheMaxMb,
+                            @Value("${shop.image.max-pixels:40000000}") long maxPixels,
+                            @Value("${shop.image.threads:2}") int threads,
+                            @Value("${shop.image.queue-size:100}") int queueSize) {
+        this.storage = storage;
+        this.localStorage = localStorage;
+        this.localMode = storage instanceof LocalStorageBackend;
+        this.widths = widths.stream().sorted().collect(Collectors.toUnmodifiableList());
+        this.cacheMaxBytes = cacheMaxMb * 1024 * 1024;
+        this.maxPixels = maxPixels;
+        AtomicInteger seq = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                r -> {
+                    Thread t = new Thread(r, "thumbnail-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+        if (localMode) {
+            loadLocalThumbs();
+        }
+    }
+
+    /** 能生成缩略图的图片 */
+    public boolean isImage(String fileName) {
+        return SUPPORTED.contains(extensionOf(fileName));
+    }
+
+    /** 图片的存储路径，放在 shop/i/ 下以便识别有缩略图 */
+    public String newKey(String originalFileName) {
+        return IMAGE_PREFIX + StorageBackend.newKey(originalFileName).substring("shop/".length());
+    }
+
+    /**
+     * 缩略图地址：取不小于 width 的最小配置宽度，没有缩略图的图片原样返回。
+     * 缩略图在上传后几秒内生成，客户端加载失败时应回退到原图。
+     */
+    public String thumbnailUrl(String url, int width) {
+        if (url == null || widths.isEmpty()) return url;
+        int idx = url.indexOf("/" + IMAGE_PREFIX);
+        if (idx < 0 || url.indexOf('/', idx + IMAGE_PREFIX.length() + 1) >= 0) return url;
+        int w = widths.stream().filter(x -> x >= width).findFirst().orElse(widths.get(widths.size() - 1));
+        int start = idx + 1 + IMAGE_PREFIX.length();
+        return url.substring(0, start) + "w" + w + "/" + url.substring(start);
+    }
+
+    // ==================== 生成 ====================
+
+    /**
+     * 后台生成缩略图
+     * @param key          原图存储路径
+     * @param source       原图本地文件
+     * @param deleteSource 源文件是临时副本时为 true，完成后删除
+     */
+    public void generateAsync(String key, Path source, boolean deleteSource) {
+        try {
+            executor.execute(() -> {
+                try {
+                    generate(key, source);
+                } finally {
+                    if (deleteSource) deleteQuietly(source);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 只丢缩略图，本地模式下访问时会补生成
+            log.warn("缩略图队列已满，跳过 {}", key);
+            if (deleteSource) deleteQuietly(source);
+        }
+    }
+
+    /** 同步生成全部宽度的缩略图（调用方在后台线程） */
+    public void generate(String key, Path source) {
+        try {
+            BufferedImage image = readImage(key, source);
+            if (image == null) {
+                return;
+            }
+            for (int width : widths) {
+                saveThumbnail(key, image, width);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("生成缩略图失败 {}", key, e);
+        }
+    }
+
+    /**
+     * 先只读图片头里的宽高，像素数超过 max-pixels 的不解码（防止小文件解压出超大图片撑爆内存）。
+     * @return 无法识别或过大时返回 null
+     */
+    private BufferedImage readImage(String key, Path file) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file.toFile())) {
+            Iterator<ImageReader> readers = in == null ? Collections.emptyIterator() : ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                log.warn("无法识别的图片 {}", key);
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+                if (pixels > maxPixels) {
+                    log.warn("图片尺寸过大 {}: {}x{}，不生成缩略图", key, reader.getWidth(0), reader.getHeight(0));
+                    return null;
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private void saveThumbnail(String key, BufferedImage image, int width) throws IOException {
+        String format = formatOf(key);
+        byte[] bytes = encode(resize(image, width, format), format);
+        String thumbKey = IMAGE_PREFIX + "w" + width + "/" + key.substring(IMAGE_PREFIX.length());
+        storage.save(thumbKey, new ByteArrayInputStream(bytes), bytes.length);
+        if (localMode) {
+            record(localStorage.resolve(thumbKey), bytes.length);
+        }
+    }
+
+    /** 等比缩放到指定宽度，原图更窄时不放大 */
+    private static BufferedImage resize(BufferedImage src, int width, String format) {
+        int w = Math.min(width, src.getWidth());
+        int h = Math.max(1, (int) Math.round((double) src.getHeight() * w / src.getWidth()));
+        // JPEG 不支持透明通道
+        int type = "png".equals(format) ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage dst = new BufferedImage(w, h, type);
+        Graphics2D g = dst.createGraphics();
+        try {
+            if (type == BufferedImage.TYPE_INT_RGB) {
+                g.setColor(Color.WHITE);
+                g.fillRect(0, 0, w, h);
+            }
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(src, 0, 0, w, h, null);
+        } finally {
+            g.dispose();
+        }
+        return dst;
+    }
+
+    private static byte[] encode(BufferedImage image, String format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, format, out);
+        return out.toByteArray();
+    }
+
+    /** png/gif 输出 png 保留透明，其余输出 jpg；文件名后缀不变 */
+    private static String formatOf(String key) {
+        String ext = extensionOf(key);
+        return "png".equals(ext) || "gif".equals(ext) ? "png" : "jpg";
+    }
+
+    private static String extensionOf(String fileName) {
+        if (fileName == null || !fileName.contains(".")) return "";
+        return fileName.substring(fileName.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+    }
+
+    // ==================== 本地缩略图缓存 ====================
+
+    /**
+     * 本地模式下访问缩略图：命中时更新 LRU，缺失时从原图重新生成。
+     * @return 缩略图文件，不是缩略图路径或原图不存在时返回 null
+     */
+    public Path localThumbnail(String key) {
+        if (!localMode) return null;
+        Matcher m = THUMB_KEY.matcher(key);
+        if (!m.matches()) return null;
+        int width = Integer.parseInt(m.group(1));
+        if (!widths.contains(width)) return null;
+
+        Path thumb = localStorage.resolve(key);
+        if (thumb == null) return null;
+        if (Files.isRegularFile(thumb)) {
+            touch(thumb);
+            return thumb;
+        }
+        Path original = localStorage.resolve(IMAGE_PREFIX + m.group(2));
+        if (original == null || !Files.isRegularFile(original)) return null;
+        try {
+            BufferedImage image = readImage(key, original);
+            if (image == null) return null;
+            saveThumbnail(IMAGE_PREFIX + m.group(2), image, width);
+            return thumb;
+        } catch (IOException e) {
+            log.error("重新生成缩略图失败 {}", key, e);
+            return null;
+        }
+    }
+
+    private void touch(Path path) {
+        lruLock.lock();
+        try {
+            localThumbs.get(path);
+        } finally {
+            lruLock.unlock();
+        }
+    }
+
+    private void record(Path path, long size) {
+        List<Path> evicted = new ArrayList<>();
+        lruLock.lock();
+        try {
+            Long old = localThumbs.put(path, size);
+            localThumbBytes += size - (old == null ? 0 : old);
+            Iterator<Map.Entry<Path, Long>> it = localThumbs.entrySet().iterator();
+            while (localThumbBytes > cacheMaxBytes && it.hasNext()) {
+                Map.Entry<Path, Long> eldest = it.next();
+                if (eldest.getKey().equals(path)) continue;
+                localThumbBytes -= eldest.getValue();
+                evicted.add(eldest.getKey());
+                it.remove();
+            }
+        } finally {
+            lruLock.unlock();
+        }
+        evicted.forEach(ImageServiceImpl::deleteQuietly);
+    }
+
+    /** 启动时登记已有的本地缩略图，按修改时间从旧到新 */
+    private void loadLocalThumbs() {
+        Path dir = localStorage.resolve(IMAGE_PREFIX);
+        if (dir == null || !Files.isDirectory(dir)) return;
+        try (Stream<Path> files = Files.walk(dir, 2)) {
+            files.filter(p -> p.getParent() != null && p.getParent().getFileName().toString().matches("w\\d+"))
+                    .filter(Files::isRegularFile)
+                    .sorted(Comparator.comparingLong(ImageServiceImpl::lastModified))
+                    .forEach(p -> {
+                        try {
+                            record(p, Files.size(p));
+                        } catch (IOException e) {
+                            log.warn("读取缩略图大小失败 {}", p, e);
+                        }
+                    });
+        } catch (IOException e) {
+            log.warn("扫描本地缩略图失败", e);
+        }
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("删除文件失败 {}", path, e);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package org.example.shop.service.impl;
+
+import org.example.shop.service.StorageBackend;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.*;
+
+/**
+ * 本地磁盘存储，文件放在 shop.storage.local.dir（默认 upload/）下，通过 /upload/** 访问。
+ * 旧版本直接存在 upload/ 下的图片也由它提供访问，所以 OSS 模式下同样会创建。
+ */
+@Service
+public class LocalStorageBackend implements StorageBackend {
+
+    public static final String URL_PREFIX = "/upload/";
+
+    private final Path root;
+
+    public LocalStorageBackend(@Value("${shop.storage.local.dir:upload}") String dir) {
+        this.root = Paths.get(dir).toAbsolutePath().normalize();
+    }
+
+    /** 先写临时文件再改名，读到的文件总是完整的 */
+    @Override
+    public String save(String key, InputStream in, long size) throws IOException {
+        Path target = resolve(key);
+        if (target == null) {
+            throw new IllegalArgumentException("非法文件路径: " + key);
+        }
+        Files.createDirectories(target.getParent());
+        Path tmp = Files.createTempFile(target.getParent(), ".upload-", ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            if (in instanceof FileInputStream) {
+                // 源也是文件时由内核直接拷贝
+                FileChannel src = ((FileInputStream) in).getChannel();
+                long total = src.size() - src.position();
+                for (long pos = 0; pos < total; ) {
+                    pos += src.transferTo(src.position() + pos, total - pos, out);
+                }
+            } else {
+                ReadableByteChannel src = Channels.newChannel(in);
+                long pos = 0;
+                long n;
+                while ((n = out.transferFrom(src, pos, 1024 * 1024)) > 0) {
+                    pos += n;
+                }
+            }
+            out.force(false);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return URL_PREFIX + key;
+    }
+
+    /** 存储路径对应的本地文件，越出存储目录时返回 null */
+    public Path resolve(String key) {
+        Path path = root.resolve(key).normalize();
+        return path.startsWith(root) && !path.equals(root) ? path : null;
+    }
+}
@@ -6,7 +6,11 @@ import org.example.shop.entity.OrderItem;
 import org.example.shop.mapper.OrderItemMapper;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 @Service
 public class OrderItemServiceImpl extends ServiceImpl<OrderItemMapper, OrderItem> implements IService<OrderItem> {
@@ -18,4 +22,19 @@ public class OrderItemServiceImpl extends ServiceImpl<OrderItemMapper, OrderItem
                 .eq(OrderItem::getOrderId, orderId)
                 .list();
     }
+
+    /**
+     * 一页订单的订单项一次查出（order_id IN (...)），按订单分组。
+     * 没有订单项的订单不会出现在结果里，调用方用 getOrDefault 取。
+     */
+    public Map<Long, List<OrderItem>> getOrderItemsByOrderIds(Collection<Long> orderIds) {
+        if (orderIds == null || orderIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        return this.lambdaQuery()
+                .in(OrderItem::getOrderId, orderIds)
+                .list()
+                .stream()
+                .collect(Collectors.groupingBy(OrderItem::getOrderId));
+    }
 }
@@ -1,25 +1,352 @@
 package org.example.shop.service.impl;
 
 
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.example.shop.config.DbRouting;
+import org.example.shop.entity.Cart;
 import org.example.shop.entity.Order;
+import org.example.shop.entity.OrderItem;
+import org.example.shop.entity.Product;
+import org.example.shop.event.OrderEvent;
+import org.example.shop.event.OrderEventBus;
 import org.example.shop.mapper.OrderMapper;
+import org.example.shop.utils.CacheLoads;
+import org.example.shop.utils.TxUtil;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.PessimisticLockingFailureException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.util.List;
-import java.util.Map;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
 
+@Slf4j
 @Service
 public class OrderServiceImpl extends ServiceImpl<OrderMapper , Order> implements IService<Order> {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private ProductServiceImpl productService;
+
+    @Autowired
+    private ShopServiceImpl shopService;
+
+    @Autowired
+    private CartServiceImpl cartService;
+
+    @Autowired
+    private OrderItemServiceImpl orderItemService;
+
+    @Autowired
+    private StockServiceImpl stockService;
+
+    @Autowired
+    private ShopDailyStatsServiceImpl dailyStatsService;
+
+    @Autowired
+    private OrderEventBus eventBus;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // 下单遇到死锁/锁等待超时时的最多尝试次数
+    @Value("${shop.order.submit-attempts:3}")
+    private int submitAttempts;
+
+    // 用户订单按状态计数：userId -> (status -> 数量)，状态流转时直接增减，短 TTL 兜底
+    private final Cache<Long, Map<Integer, Long>> userCountCache;
+
+    private final boolean userCountCacheEnabled;
+
+    // 计数变化版本号，见 CacheLoads：加载期间该用户有订单状态变化时，读到的计数不回填
+    private final CacheLoads.Stamps userCountStamps = new CacheLoads.Stamps();
+
+    public OrderServiceImpl(@Value("${shop.cache.order-count.enabled:true}") boolean userCountCacheEnabled,
+                            @Value("${shop.cache.order-count.max-size:100000}") long maxSize,
+                            @Value("${shop.cache.order-count.expire-seconds:30}") long expireSeconds) {
+        this.userCountCacheEnabled = userCountCacheEnabled;
+        this.userCountCache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(expireSeconds))
+                .recordStats()
+                .build();
+    }
+
     public List<Map<String, Object>> getOrderItemsByOrderId(Long orderId) {
         String sql = "SELECT id, order_id, product_id, product_name, product_image, price, quantity " +
                 "FROM order_item WHERE order_id = ?";
         return jdbcTemplate.queryForList(sql, orderId);
     }
+
+    /**
+     * 游标分页：按 (create_time, id) 倒序，从上一页最后一条之后开始取，
+     * 深翻页不再有 OFFSET 扫描，也不跑 count。
+     *
+     * @param cursorTime 上一页最后一条的 createTime，为空表示第一页
+     * @param cursorId   上一页最后一条的 id
+     */
+    public List<Order> listByKeyset(LambdaQueryWrapper<Order> query, LocalDateTime cursorTime, Long cursorId, int pageSize) {
+        if (cursorTime != null) {
+            if (cursorId != null) {
+                query.and(w -> w.lt(Order::getCreateTime, cursorTime)
+                        .or(o -> o.eq(Order::getCreateTime, cursorTime).lt(Order::getId, cursorId)));
+            } else {
+                query.lt(Order::getCreateTime, cursorTime);
+            }
+        }
+        query.orderByDesc(Order::getCreateTime).orderByDesc(Order::getId);
+        return page(new Page<>(1, pageSize, false), query).getRecords();
+    }
+
+    /** 把下一页游标放进返回结果（没有更多数据时为 null） */
+    public static void putNextCursor(Map<String, Object> result, List<Order> records, int pageSize) {
+        Order last = records.size() < pageSize ? null : records.get(records.size() - 1);
+        result.put("hasMore", last != null);
+        result.put("nextCursorTime", last != null ? last.getCreateTime() : null);
+        result.put("nextCursorId", last != null ? last.getId() : null);
+    }
+
+    /** 用户各状态订单数（一条 GROUP BY 查询，带短期缓存） */
+    public Map<Integer, Long> countByStatus(Long userId) {
+        if (!userCountCacheEnabled) {
+            return loadUserCounts(userId);
+        }
+        return CacheLoads.get(userCountCache, userCountStamps, userId, key -> DbRouting.onPrimary(() -> loadUserCounts(key)));
+    }
+
+    private Map<Integer, Long> loadUserCounts(Long userId) {
+        Map<Integer, Long> counts = new HashMap<>();
+        for (Map<String, Object> row : baseMapper.countByStatusOfUser(userId)) {
+            if (row.get("grp") == null) continue;
+            counts.put(((Number) row.get("grp")).intValue(), ((Number) row.get("cnt")).longValue());
+        }
+        return Map.copyOf(counts);
+    }
+
+    /**
+     * 订单状态流转后调整计数缓存（事务提交后生效）。
+     * from 为 null 表示新订单，to 为 null 表示订单被删除；缓存里没有该用户时什么都不做，下次读时从库加载。
+     */
+    private void onStatusChange(Long userId, Integer from, Integer to) {
+        if (!userCountCacheEnabled || userId == null) return;
+        TxUtil.afterCommit(() -> {
+            userCountStamps.bump(userId);
+            userCountCache.asMap().computeIfPresent(userId, (id, counts) -> {
+                Map<Integer, Long> next = new HashMap<>(counts);
+                if (from != null) next.merge(from, -1L, Long::sum);
+                if (to != null) next.merge(to, 1L, Long::sum);
+                return Map.copyOf(next);
+            });
+        });
+    }
+
+    public Map<String, Object> cacheStats() {
+        return ProductServiceImpl.toMap(userCountCache.stats(), userCountCache.estimatedSize());
+    }
+
+    /**
+     * 状态流转（支付/发货/管理员修改），以读到的旧状态做条件更新，并发修改时返回 false。
+     * 取消请走 cancelOrder，需要回补库存。
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public boolean changeStatus(Order order, int to) {
+        var update = lambdaUpdate()
+                .eq(Order::getId, order.getId())
+                .eq(Order::getStatus, order.getStatus())
+                .set(Order::getStatus, to);
+        if (to == 2) { // 已支付
+            update.set(Order::getPayTime, LocalDateTime.now());
+        } else if (to == 3) { // 已发货
+            update.set(Order::getDeliverTime, LocalDateTime.now());
+        }
+        boolean updated = update.update();
+        if (updated) {
+            onStatusChange(order.getUserId(), order.getStatus(), to);
+            dailyStatsService.onOrderChange(order, order.getStatus(), to);
+            eventBus.publish(OrderEvent.of(order, order.getStatus(), to));
+        }
+        return updated;
+    }
+
+    /**
+     * 提交订单：商品一次 IN 查询加载，订单项批量插入，整体在一个事务内完成。
+     * 业务校验失败抛 IllegalArgumentException，消息直接返回给前端；
+     * 死锁、锁等待超时时整个事务重试，超过次数抛 PessimisticLockingFailureException。
+     * 不要在外层事务里调用，否则重试没有意义。
+     *
+     * @return 订单号
+     */
+    public String submitOrder(Long userId, List<Long> productIds, String address) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> doSubmitOrder(userId, productIds, address));
+            } catch (PessimisticLockingFailureException e) {
+                if (attempt >= submitAttempts) {
+                    throw e;
+                }
+                log.warn("下单锁冲突，第 {} 次重试 userId={}: {}", attempt, userId, e.getMessage());
+                try {
+                    // 随机退避，错开冲突的事务
+                    Thread.sleep(ThreadLocalRandom.current().nextLong(10, 50) * attempt);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private String doSubmitOrder(Long userId, List<Long> productIds, String address) {
+        Set<Long> selected = productIds == null ? Collections.emptySet() : new HashSet<>(productIds);
+        List<Cart> carts = cartService.getCart(userId).stream()
+                .filter(c -> selected.isEmpty() || selected.contains(c.getProductId()))
+                .collect(Collectors.toList());
+
+        if (carts.isEmpty()) {
+            throw new IllegalArgumentException("购物车为空或所选商品不存在");
+        }
+
+        // 一次性加载所有商品，校验和生成订单项共用
+        Map<Long, Product> productMap = productService.getCachedByIds(carts.stream()
+                .map(Cart::getProductId)
+                .collect(Collectors.toList()));
+
+        Long shopId = null;
+        BigDecimal total = BigDecimal.ZERO;
+
+        for (Cart c : carts) {
+            Product p = productMap.get(c.getProductId());
+            if (p == null || p.getIsOnSale() == 0 || p.getShopId() == null) {
+                throw new IllegalArgumentException("商品已下架或不存在");
+            }
+
+            // 从商品正确获取 shopId
+            if (shopId == null) {
+                shopId = p.getShopId();
+            } else if (!shopId.equals(p.getShopId())) {
+                throw new IllegalArgumentException("暂不支持跨店铺下单");
+            }
+
+            total = total.add(p.getPrice().multiply(BigDecimal.valueOf(c.getNum())));
+        }
+
+        // 保险校验：店铺真的存在
+        if (shopService.getById(shopId) == null) {
+            throw new IllegalArgumentException("店铺不存在或未审核通过");
+        }
+
+        Order order = new Order();
+        order.setOrderNo("ORD" + UUID.randomUUID().toString().substring(0, 12).toUpperCase());
+        order.setUserId(userId);
+        order.setShopId(shopId);
+        order.setTotalAmount(total);
+        order.setAddress(address);
+        order.setCreateTime(LocalDateTime.now());
+        order.setStatus(1); // 待支付
+        save(order);
+
+        // 生成订单项（批量插入）
+        List<OrderItem> items = new ArrayList<>(carts.size());
+        for (Cart c : carts) {
+            Product p = productMap.get(c.getProductId());
+            OrderItem item = new OrderItem();
+            item.setOrderId(order.getId());
+            item.setProductId(p.getId());
+            item.setProductName(p.getName());
+            item.setProductImage(p.getImage());
+            item.setPrice(p.getPrice());
+            item.setNum(c.getNum());
+            items.add(item);
+        }
+        orderItemService.saveBatch(items);
+
+        // 最后扣减库存（条件更新，不足直接失败回滚）：商品行锁在这之后只持有到提交
+        Map<Long, Integer> quantities = carts.stream()
+                .collect(Collectors.toMap(Cart::getProductId, Cart::getNum, Integer::sum));
+        stockService.deduct(quantities);
+        // 提交后再丢缓存，否则并发读可能把提交前的库存/销量重新加载进缓存
+        TxUtil.afterCommit(() -> productService.invalidate(quantities.keySet()));
+        dailyStatsService.onOrderChange(order, null, 1);
+
+        // 提交成功后从购物车移除本次加载到的商品
+        List<Long> orderedIds = new ArrayList<>(quantities.keySet());
+        TxUtil.afterCommit(() -> cartService.remove(userId, orderedIds));
+
+        onStatusChange(userId, null, 1);
+        OrderEvent event = OrderEvent.of(order, null, 1);
+        event.setItems(Map.copyOf(quantities));
+        eventBus.publish(event);
+        return order.getOrderNo();
+    }
+
+    /**
+     * 取消订单并回补库存。
+     * 用条件更新切换状态，重复取消不会重复回补。
+     *
+     * @param expectStatus 只有当前状态等于它时才取消，为 null 表示任意未取消状态
+     * @return 是否真的取消了
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public boolean cancelOrder(Long orderId, Integer expectStatus) {
+        Order order = getById(orderId);
+        if (order == null || order.getStatus() == 5) {
+            return false;
+        }
+        if (expectStatus != null && !expectStatus.equals(order.getStatus())) {
+            return false;
+        }
+        boolean updated = lambdaUpdate()
+                .eq(Order::getId, orderId)
+                .eq(Order::getStatus, order.getStatus())
+                .set(Order::getStatus, 5)
+                .update();
+        if (!updated) {
+            return false;
+        }
+        onStatusChange(order.getUserId(), order.getStatus(), 5);
+
+        Map<Long, Integer> quantities = orderItemService.getOrderItemsByOrderId(orderId).stream()
+                .collect(Collectors.toMap(OrderItem::getProductId, OrderItem::getNum, Integer::sum));
+        if (!quantities.isEmpty()) {
+            stockService.restore(quantities);
+            TxUtil.afterCommit(() -> productService.invalidate(quantities.keySet()));
+        }
+        // 和下单一样先锁商品行再锁汇总行，避免互相死锁
+        dailyStatsService.onOrderChange(order, order.getStatus(), 5);
+        OrderEvent event = OrderEvent.of(order, order.getStatus(), 5);
+        event.setItems(Map.copyOf(quantities));
+        eventBus.publish(event);
+        return true;
+    }
+
+    /** 删除订单及订单项，同时从每日汇总里扣掉 */
+    @Transactional(rollbackFor = Exception.class)
+    public boolean deleteOrder(Long orderId) {
+        // 锁住订单行，汇总按的状态不会被并发修改
+        Order order = lambdaQuery().eq(Order::getId, orderId).last("FOR UPDATE").one();
+        if (order == null) {
+            return false;
+        }
+        // 先算汇总（已支付订单要读订单项件数），再删
+        dailyStatsService.onOrderChange(order, order.getStatus(), null);
+        onStatusChange(order.getUserId(), order.getStatus(), null);
+        orderItemService.lambdaUpdate()
+                .eq(OrderItem::getOrderId, orderId)
+                .remove();
+        return removeById(orderId);
+    }
 }
@@ -0,0 +1,25 @@
+package org.example.shop.service.impl;
+
+import lombok.RequiredArgsConstructor;
+import org.example.shop.service.StorageBackend;
+import org.example.shop.utils.OssUtil;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import java.io.InputStream;
+
+/** 阿里云OSS存储（默认） */
+@Primary
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "shop.storage.type", havingValue = "oss", matchIfMissing = true)
+public class OssStorageBackend implements StorageBackend {
+
+    private final OssUtil ossUtil;
+
+    @Override
+    public String save(String key, InputStream in, long size) {
+        return ossUtil.upload(key, in, size);
+    }
+}
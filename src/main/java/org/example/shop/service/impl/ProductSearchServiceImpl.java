@@ -0,0 +1,347 @@
+package org.example.shop.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.example.shop.entity.Product;
+import org.example.shop.event.OrderEvent;
+import org.example.shop.event.OrderEventListener;
+import org.example.shop.mapper.ProductMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * 商品名称全文检索（进程内倒排索引），替代 LIKE '%keyword%' 全表扫描。
+ * 中日韩文字按单字 + 二元组切分，英文数字按单词及其前缀切分；
+ * 启动后后台分批全量构建，商品写操作时增量更新，下单/取消后通过订单事件刷新销量排序。
+ * 索引未就绪或被关闭时退回数据库 LIKE 查询。
+ */
+@Slf4j
+@Service
+public class ProductSearchServiceImpl implements OrderEventListener {
+
+    private static final int REBUILD_BATCH = 1000;
+    private static final int MAX_PREFIX = 20;
+
+    @Autowired
+    private ProductMapper productMapper;
+
+    @Value("${shop.search.enabled:true}")
+    private boolean enabled;
+
+    // productId -> 文档
+    private final Map<Long, Doc> docs = new ConcurrentHashMap<>();
+
+    // 词 -> productId 集合
+    private final Map<String, Set<Long>> postings = new ConcurrentHashMap<>();
+
+    // 写索引串行化；读不加锁
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    // 全量构建期间被增量更新/删除过的商品，构建时跳过，避免旧数据覆盖新数据
+    private final Set<Long> touchedDuringRebuild = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean rebuilding;
+
+    private volatile boolean ready;
+
+    @Data
+    public static class SearchResult {
+        private final List<Long> ids;
+        private final long total;
+    }
+
+    private static class Doc {
+        final Long id;
+        final Long shopId;
+        final Integer isOnSale;
+        final int sales;
+        final String name;
+        final Set<String> tokens;
+
+        Doc(Product p, Set<String> tokens) {
+            this.id = p.getId();
+            this.shopId = p.getShopId();
+            this.isOnSale = p.getIsOnSale();
+            this.sales = p.getSales() == null ? 0 : p.getSales();
+            this.name = p.getName() == null ? "" : p.getName().toLowerCase(Locale.ROOT);
+            this.tokens = tokens;
+        }
+    }
+
+    // ==================== 查询 ====================
+
+    /**
+     * 按名称搜索，返回当前页商品 ID（按相关度排序）和命中总数。
+     *
+     * @param shopId   可选，店铺过滤
+     * @param isOnSale 可选，上架状态过滤
+     */
+    public SearchResult search(String keyword, Long shopId, Integer isOnSale, int page, int pageSize) {
+        if (!enabled || !ready || isSingleLatinChar(keyword)) {
+            return searchByLike(keyword, shopId, isOnSale, page, pageSize);
+        }
+
+        List<String> queryTokens = new ArrayList<>(tokenize(keyword, false));
+        if (queryTokens.isEmpty()) {
+            return new SearchResult(Collections.emptyList(), 0);
+        }
+
+        int docCount = Math.max(docs.size(), 1);
+        Map<Long, Double> scores = new HashMap<>();
+        Map<Long, Integer> hits = new HashMap<>();
+        double maxScore = 0;
+        for (String token : queryTokens) {
+            Set<Long> ids = postings.get(token);
+            if (ids == null) continue;
+            double idf = Math.log(1 + (double) docCount / ids.size());
+            maxScore += idf;
+            for (Long id : ids) {
+                Doc doc = docs.get(id);
+                if (doc == null || !matches(doc, shopId, isOnSale)) continue;
+                scores.merge(id, idf, Double::sum);
+                hits.merge(id, 1, Integer::sum);
+            }
+        }
+
+        // 词少时要求全部命中，词多时命中 75% 即可
+        int required = queryTokens.size() <= 2
+                ? queryTokens.size()
+                : (int) Math.ceil(queryTokens.size() * 0.75);
+        String phrase = keyword.trim().toLowerCase(Locale.ROOT);
+        double phraseBonus = maxScore;
+
+        List<Doc> matched = new ArrayList<>();
+        Map<Long, Double> finalScores = new HashMap<>();
+        hits.forEach((id, count) -> {
+            if (count < required) return;
+            Doc doc = docs.get(id);
+            if (doc == null) return;
+            double score = scores.get(id);
+            if (doc.name.contains(phrase)) score += phraseBonus;   // 完整包含关键词的排前面
+            finalScores.put(id, score);
+            matched.add(doc);
+        });
+
+        matched.sort(Comparator.<Doc>comparingDouble(d -> finalScores.get(d.id)).reversed()
+                .thenComparing(Comparator.<Doc>comparingInt(d -> d.sales).reversed())
+                .thenComparing(Comparator.<Doc, Long>comparing(d -> d.id).reversed()));
+
+        int from = Math.min((page - 1) * pageSize, matched.size());
+        int to = Math.min(from + pageSize, matched.size());
+        List<Long> ids = matched.subList(from, to).stream().map(d -> d.id).collect(Collectors.toList());
+        return new SearchResult(ids, matched.size());
+    }
+
+    private static boolean matches(Doc doc, Long shopId, Integer isOnSale) {
+        return (shopId == null || shopId.equals(doc.shopId))
+                && (isOnSale == null || isOnSale.equals(doc.isOnSale));
+    }
+
+    /** 索引不可用时的数据库查询 */
+    private SearchResult searchByLike(String keyword, Long shopId, Integer isOnSale, int page, int pageSize) {
+        LambdaQueryWrapper<Product> query = new LambdaQueryWrapper<Product>()
+                .select(Product::getId)
+                .like(Product::getName, keyword.trim())
+                .eq(shopId != null, Product::getShopId, shopId)
+                .eq(isOnSale != null, Product::getIsOnSale, isOnSale)
+                .orderByDesc(Product::getCreateTime);
+        Page<Product> result = productMapper.selectPage(new Page<>(page, pageSize), query);
+        List<Long> ids = result.getRecords().stream().map(Product::getId).collect(Collectors.toList());
+        return new SearchResult(ids, result.getTotal());
+    }
+
+    // ==================== 增量维护 ====================
+
+    /** 商品新增/修改后更新索引 */
+    public void index(Product product) {
+        if (product == null || product.getId() == null) return;
+        writeLock.lock();
+        try {
+            if (rebuilding) touchedDuringRebuild.add(product.getId());
+            doIndex(product);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /** 商品删除后移出索引 */
+    public void remove(Long productId) {
+        if (productId == null) return;
+        writeLock.lock();
+        try {
+            if (rebuilding) touchedDuringRebuild.add(productId);
+            doRemove(productId);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /** 下单/取消改变了商品销量，一批事件涉及的商品一次查询后重新索引 */
+    @Override
+    public void onOrderEvents(List<OrderEvent> events) {
+        if (!enabled) return;
+        Set<Long> ids = new HashSet<>();
+        for (OrderEvent e : events) {
+            if (e.getItems() != null) ids.addAll(e.getItems().keySet());
+        }
+        if (ids.isEmpty()) return;
+        List<Product> products = productMapper.selectList(new LambdaQueryWrapper<Product>()
+                .select(Product::getId, Product::getShopId, Product::getName,
+                        Product::getIsOnSale, Product::getSales)
+                .in(Product::getId, ids));
+        writeLock.lock();
+        try {
+            for (Product p : products) {
+                if (rebuilding) touchedDuringRebuild.add(p.getId());
+                doIndex(p);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void doIndex(Product product) {
+        doRemove(product.getId());
+        Doc doc = new Doc(product, tokenize(product.getName(), true));
+        docs.put(doc.id, doc);
+        for (String token : doc.tokens) {
+            postings.computeIfAbsent(token, k -> ConcurrentHashMap.newKeySet()).add(doc.id);
+        }
+    }
+
+    private void doRemove(Long productId) {
+        Doc old = docs.remove(productId);
+        if (old == null) return;
+        for (String token : old.tokens) {
+            postings.computeIfPresent(token, (k, ids) -> {
+                ids.remove(productId);
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+    }
+
+    // ==================== 全量构建 ====================
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        if (!enabled) return;
+        Thread thread = new Thread(this::rebuild, "product-index-rebuild");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** 按 ID 分批读取全部商品构建索引 */
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        rebuilding = true;
+        try {
+            long lastId = 0;
+            int total = 0;
+            while (true) {
+                List<Product> batch = productMapper.selectList(new LambdaQueryWrapper<Product>()
+                        .select(Product::getId, Product::getShopId, Product::getName,
+                                Product::getIsOnSale, Product::getSales)
+                        .gt(Product::getId, lastId)
+                        .orderByAsc(Product::getId)
+                        .last("LIMIT " + REBUILD_BATCH));
+                if (batch.isEmpty()) break;
+
+                writeLock.lock();
+                try {
+                    for (Product p : batch) {
+                        if (!touchedDuringRebuild.contains(p.getId())) doIndex(p);
+                    }
+                } finally {
+                    writeLock.unlock();
+                }
+                lastId = batch.get(batch.size() - 1).getId();
+                total += batch.size();
+            }
+            ready = true;
+            log.info("商品索引构建完成，共 {} 个商品，{} 个词，耗时 {}ms",
+                    total, postings.size(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("商品索引构建失败，搜索退回数据库查询", e);
+        } finally {
+            rebuilding = false;
+            touchedDuringRebuild.clear();
+        }
+    }
+
+    // ==================== 分词 ====================
+
+    /**
+     * 中日韩连续文字：索引时切单字 + 二元组，查询时单字只在只有一个字时使用，否则用二元组；
+     * 字母数字连续串：索引时切出全部前缀（2 个字符起），查询时用整个单词。
+     */
+    static Set<String> tokenize(String text, boolean forIndex) {
+        Set<String> tokens = new LinkedHashSet<>();
+        if (text == null) return tokens;
+        String s = text.toLowerCase(Locale.ROOT);
+        StringBuilder cjk = new StringBuilder();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (isCjk(c)) {
+                flushWord(word, tokens, forIndex);
+                cjk.append(c);
+            } else if (Character.isLetterOrDigit(c)) {
+                flushCjk(cjk, tokens, forIndex);
+                word.append(c);
+            } else {
+                flushWord(word, tokens, forIndex);
+                flushCjk(cjk, tokens, forIndex);
+            }
+        }
+        flushWord(word, tokens, forIndex);
+        flushCjk(cjk, tokens, forIndex);
+        return tokens;
+    }
+
+    /** 字母数字只索引 2 个字符起的前缀，单个字母/数字的查询只能走 LIKE（单个汉字在索引里） */
+    static boolean isSingleLatinChar(String keyword) {
+        if (keyword == null) return false;
+        String k = keyword.trim();
+        return k.length() == 1 && !isCjk(k.charAt(0)) && Character.isLetterOrDigit(k.charAt(0));
+    }
+
+    private static void flushCjk(StringBuilder run, Set<String> tokens, boolean forIndex) {
+        int n = run.length();
+        if (n == 0) return;
+        if (forIndex || n == 1) {
+            for (int i = 0; i < n; i++) tokens.add(String.valueOf(run.charAt(i)));
+        }
+        for (int i = 0; i + 1 < n; i++) tokens.add(run.substring(i, i + 2));
+        run.setLength(0);
+    }
+
+    private static void flushWord(StringBuilder run, Set<String> tokens, boolean forIndex) {
+        int n = run.length();
+        if (n == 0) return;
+        if (forIndex) {
+            for (int len = Math.min(2, n); len <= Math.min(n, MAX_PREFIX); len++) tokens.add(run.substring(0, len));
+            tokens.add(run.toString());
+        } else {
+            tokens.add(run.length() > MAX_PREFIX ? run.substring(0, MAX_PREFIX) : run.toString());
+        }
+        run.setLength(0);
+    }
+
+    private static boolean isCjk(char c) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(c);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+}
@@ -1,12 +1,269 @@
 package org.example.shop.service.impl;
 
 
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
+import com.baomidou.mybatisplus.core.toolkit.StringUtils;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.Data;
+import org.example.shop.config.DbRouting;
 import org.example.shop.entity.Product;
 import org.example.shop.mapper.ProductMapper;
+import org.example.shop.utils.CacheLoads;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
 @Service
 public class ProductServiceImpl extends ServiceImpl<ProductMapper, Product> implements IService<Product> {
+
+    // 单个商品缓存：productId -> Product
+    private final Cache<Long, Product> productCache;
+
+    // 首页列表缓存：排序方式:每页条数 -> 第一页商品卡片
+    private final Cache<String, List<ProductCard>> listCache;
+
+    // 失效版本号，见 CacheLoads：加载期间发生过失效的结果不回填
+    private final CacheLoads.Stamps productStamps = new CacheLoads.Stamps();
+    private final CacheLoads.Stamps listStamps = new CacheLoads.Stamps();
+
+    private final StockServiceImpl stockService;
+
+    private final ProductSearchServiceImpl searchService;
+
+    private final ImageServiceImpl imageService;
+
+    public ProductServiceImpl(StockServiceImpl stockService,
+                              ProductSearchServiceImpl searchService,
+                              ImageServiceImpl imageService,
+                              @Value("${shop.cache.product.max-size:10000}") long maxSize,
+                              @Value("${shop.cache.product.expire-seconds:300}") long expireSeconds) {
+        this.stockService = stockService;
+        this.searchService = searchService;
+        this.imageService = imageService;
+        this.productCache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(expireSeconds))
+                .recordStats()
+                .build();
+        this.listCache = Caffeine.newBuilder()
+                .maximumSize(64)
+                .expireAfterWrite(Duration.ofSeconds(expireSeconds))
+                .recordStats()
+                .build();
+    }
+
+    /** 按 ID 读商品（走缓存，不存在返回 null）。缓存都从主库加载，不缓存从库的延迟数据 */
+    public Product getCachedById(Long id) {
+        if (id == null) return null;
+        return CacheLoads.get(productCache, productStamps, id, key -> DbRouting.onPrimary(() -> getById(key)));
+    }
+
+    /** 批量按 ID 读商品，未命中的部分用一条 IN 查询补齐 */
+    public Map<Long, Product> getCachedByIds(Collection<Long> ids) {
+        if (ids == null || ids.isEmpty()) return Collections.emptyMap();
+        return CacheLoads.getAll(productCache, productStamps, new HashSet<>(ids),
+                missing -> DbRouting.onPrimary(() -> listByIds(missing)).stream()
+                        .collect(Collectors.toMap(Product::getId, Function.identity())));
+    }
+
+    /** 商品列表卡片：只包含列表页需要的字段 */
+    @Data
+    public static class ProductCard {
+        private Long id;
+        private Long shopId;
+        private String name;
+        private String image;
+        // 列表用缩略图，没有缩略图时同 image
+        private String thumbnail;
+        private BigDecimal price;
+        private Integer sales;
+
+        static ProductCard of(Product p, String thumbnail) {
+            ProductCard card = new ProductCard();
+            card.setId(p.getId());
+            card.setShopId(p.getShopId());
+            card.setName(p.getName());
+            card.setImage(p.getImage());
+            card.setThumbnail(thumbnail);
+            card.setPrice(p.getPrice());
+            card.setSales(p.getSales());
+            return card;
+        }
+    }
+
+    /**
+     * 上架商品分页列表，只查卡片需要的列。
+     * 传 cursorId（上一页最后一条的 id，按销量/价格排序时再传它的 sales/price 作为 cursorValue）时走游标分页，忽略 page。
+     *
+     * @param sort new（最新，默认）、sales（销量）、price_asc、price_desc
+     */
+    public List<ProductCard> listCards(String sort, int page, int pageSize, String cursorValue, Long cursorId) {
+        boolean keyset = cursorId != null;
+        if (!keyset && page == 1) {
+            // 首页访问最多，缓存第一页
+            return CacheLoads.get(listCache, listStamps, sort + ":" + pageSize,
+                    key -> DbRouting.onPrimary(() -> queryCards(sort, 1, pageSize, null, null)));
+        }
+        return queryCards(sort, page, pageSize, cursorValue, cursorId);
+    }
+
+    private List<ProductCard> queryCards(String sort, int page, int pageSize, String cursorValue, Long cursorId) {
+        LambdaQueryWrapper<Product> query = new LambdaQueryWrapper<Product>()
+                .select(Product::getId, Product::getShopId, Product::getName,
+                        Product::getImage, Product::getPrice, Product::getSales)
+                .eq(Product::getIsOnSale, 1);
+        boolean keyset = cursorId != null;
+        if (keyset && !"new".equals(sort) && cursorValue == null) {
+            throw new IllegalArgumentException("按销量/价格排序时游标需要 cursorValue");
+        }
+
+        switch (sort) {
+            case "sales" -> {
+                if (keyset) {
+                    int sales = Integer.parseInt(cursorValue);
+                    query.and(w -> w.lt(Product::getSales, sales)
+                            .or(o -> o.eq(Product::getSales, sales).lt(Product::getId, cursorId)));
+                }
+                query.orderByDesc(Product::getSales).orderByDesc(Product::getId);
+            }
+            case "price_asc" -> {
+                query.isNotNull(Product::getPrice);
+                if (keyset) {
+                    BigDecimal price = new BigDecimal(cursorValue);
+                    query.and(w -> w.gt(Product::getPrice, price)
+                            .or(o -> o.eq(Product::getPrice, price).gt(Product::getId, cursorId)));
+                }
+                query.orderByAsc(Product::getPrice).orderByAsc(Product::getId);
+            }
+            case "price_desc" -> {
+                query.isNotNull(Product::getPrice);
+                if (keyset) {
+                    BigDecimal price = new BigDecimal(cursorValue);
+                    query.and(w -> w.lt(Product::getPrice, price)
+                            .or(o -> o.eq(Product::getPrice, price).lt(Product::getId, cursorId)));
+                }
+                query.orderByDesc(Product::getPrice).orderByDesc(Product::getId);
+            }
+            default -> {
+                // id 自增，按 id 倒序即最新上架（create_time 可能为空，不适合做游标）
+                if (keyset) {
+                    query.lt(Product::getId, cursorId);
+                }
+                query.orderByDesc(Product::getId);
+            }
+        }
+
+        Page<Product> result = page(new Page<>(keyset ? 1 : page, pageSize, false), query);
+        return result.getRecords().stream()
+                .map(p -> ProductCard.of(p, imageService.thumbnailUrl(p.getImage(), 400)))
+                .collect(Collectors.toUnmodifiableList());
+    }
+
+    /** 商品发生写操作后清理缓存 */
+    public void evict(Long id) {
+        if (id != null) {
+            productStamps.bump(id);
+            productCache.invalidate(id);
+            stockService.reset(id);
+        }
+        listStamps.bumpAll();
+        listCache.invalidateAll();
+    }
+
+    /** 只有库存/销量变化时只丢单个商品，不清列表缓存 */
+    public void invalidate(Collection<Long> ids) {
+        productStamps.bumpAll(ids);
+        productCache.invalidateAll(ids);
+    }
+
+    public void evictAll() {
+        productStamps.bumpAll();
+        listStamps.bumpAll();
+        productCache.invalidateAll();
+        listCache.invalidateAll();
+    }
+
+    /** 缓存命中统计，用于线上调整容量 */
+    public Map<String, Object> cacheStats() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("product", toMap(productCache.stats(), productCache.estimatedSize()));
+        result.put("productList", toMap(listCache.stats(), listCache.estimatedSize()));
+        return result;
+    }
+
+    static Map<String, Object> toMap(CacheStats stats, long size) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("size", size);
+        map.put("hitCount", stats.hitCount());
+        map.put("missCount", stats.missCount());
+        map.put("hitRate", stats.hitRate());
+        map.put("evictionCount", stats.evictionCount());
+        return map;
+    }
+
+    /** 按名称搜索，返回当前页商品（按相关度排序）和总数 */
+    public Map<String, Object> search(String keyword, Long shopId, Integer isOnSale, int page, int pageSize) {
+        ProductSearchServiceImpl.SearchResult hits = searchService.search(keyword, shopId, isOnSale, page, pageSize);
+        Map<Long, Product> products = getCachedByIds(hits.getIds());
+        List<Product> list = hits.getIds().stream()
+                .map(products::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("list", list);
+        result.put("total", hits.getTotal());
+        return result;
+    }
+
+    // ===== 写操作统一失效缓存、更新搜索索引 =====
+
+    @Override
+    public boolean save(Product entity) {
+        boolean ok = super.save(entity);
+        evict(entity.getId());
+        if (ok) searchService.index(entity);
+        return ok;
+    }
+
+    @Override
+    public boolean updateById(Product entity) {
+        boolean ok = super.updateById(entity);
+        evict(entity.getId());
+        if (ok) searchService.index(getById(entity.getId()));
+        return ok;
+    }
+
+    /**
+     * 只更新 update 里 set 的列。
+     * 商品编辑/上下架不要先查再 updateById：整行写回会把查询之后下单扣掉的库存、销量覆盖成旧值。
+     */
+    public boolean updateColumns(Long id, LambdaUpdateWrapper<Product> update) {
+        if (StringUtils.isBlank(update.getSqlSet())) return true;
+        boolean ok = update(update.eq(Product::getId, id));
+        evict(id);
+        if (ok) searchService.index(getById(id));
+        return ok;
+    }
+
+    @Override
+    public boolean removeById(Serializable id) {
+        boolean ok = super.removeById(id);
+        Long productId = id instanceof Long ? (Long) id : Long.valueOf(id.toString());
+        evict(productId);
+        searchService.remove(productId);
+        return ok;
+    }
 }
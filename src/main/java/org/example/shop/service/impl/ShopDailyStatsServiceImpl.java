@@ -0,0 +1,234 @@
+package org.example.shop.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import lombok.extern.slf4j.Slf4j;
+import org.example.shop.entity.Order;
+import org.example.shop.entity.OrderItem;
+import org.example.shop.entity.ShopDailyStats;
+import org.example.shop.mapper.OrderItemMapper;
+import org.example.shop.mapper.ShopDailyStatsMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 店铺每日销售汇总（shop_daily_stats）。
+ * 订单新建/支付/发货/取消/删除时由 OrderServiceImpl 在同一事务里调用 {@link #onOrderChange} 累加增量，
+ * 报表直接按 (shop_id, stat_date) 读取，不扫订单表。
+ * 建表或数据不一致时用 {@link #startBackfill} 按天从订单表重算。
+ */
+@Slf4j
+@Service
+public class ShopDailyStatsServiceImpl {
+
+    // 计入销售额的状态：已支付、已发货、已完成
+    private static final Set<Integer> PAID = Set.of(2, 3, 4);
+
+    private static final int CANCELLED = 5;
+
+    @Autowired
+    private ShopDailyStatsMapper statsMapper;
+
+    @Autowired
+    private OrderItemMapper orderItemMapper;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // 重算每天之间的停顿，避免持续占用主库
+    @Value("${shop.stats.backfill-pause-ms:50}")
+    private long backfillPauseMs;
+
+    @Value("${shop.stats.rebuild-today-on-startup:true}")
+    private boolean rebuildTodayOnStartup;
+
+    private final AtomicBoolean backfilling = new AtomicBoolean();
+
+    /**
+     * 订单状态变化时累加到下单当天的汇总行，需在修改订单的事务里调用。
+     *
+     * @param from 原状态，null 表示新订单
+     * @param to   新状态，null 表示订单被删除
+     */
+    public void onOrderChange(Order order, Integer from, Integer to) {
+        if (order.getShopId() == null || order.getCreateTime() == null) return;
+
+        ShopDailyStats delta = new ShopDailyStats();
+        delta.setShopId(order.getShopId());
+        delta.setStatDate(order.getCreateTime().toLocalDate());
+        delta.setOrders((long) ((from == null ? 1 : 0) - (to == null ? 1 : 0)));
+        delta.setCancelledOrders((long) (flag(to, CANCELLED) - flag(from, CANCELLED)));
+
+        int paid = isPaid(to) - isPaid(from);
+        if (paid != 0) {
+            BigDecimal amount = order.getTotalAmount() == null ? BigDecimal.ZERO : order.getTotalAmount();
+            delta.setPaidOrders((long) paid);
+            delta.setGmv(amount.multiply(BigDecimal.valueOf(paid)));
+            delta.setItemsSold(itemCount(order.getId()) * paid);
+        }
+
+        if (delta.getOrders() == 0 && delta.getCancelledOrders() == 0 && paid == 0) return;
+        statsMapper.addDelta(delta);
+    }
+
+    // Set.of(...).contains(null) 会抛 NPE，新建/删除时状态为 null
+    private static int isPaid(Integer status) {
+        return status != null && PAID.contains(status) ? 1 : 0;
+    }
+
+    private static int flag(Integer status, int expect) {
+        return status != null && status == expect ? 1 : 0;
+    }
+
+    private long itemCount(Long orderId) {
+        return orderItemMapper.selectList(new LambdaQueryWrapper<OrderItem>()
+                        .select(OrderItem::getNum)
+                        .eq(OrderItem::getOrderId, orderId))
+                .stream()
+                .mapToLong(i -> i.getNum() == null ? 0 : i.getNum())
+                .sum();
+    }
+
+    // ==================== 查询 ====================
+
+    /** 某个店铺 [from, to] 每天的汇总，没有订单的日期补 0 */
+    public List<ShopDailyStats> daily(Long shopId, LocalDate from, LocalDate to) {
+        List<ShopDailyStats> rows = statsMapper.selectList(new LambdaQueryWrapper<ShopDailyStats>()
+                .eq(ShopDailyStats::getShopId, shopId)
+                .between(ShopDailyStats::getStatDate, from, to));
+        return fill(rows, shopId, from, to);
+    }
+
+    /** 全部店铺 [from, to] 每天的合计 */
+    public List<ShopDailyStats> dailyTotal(LocalDate from, LocalDate to) {
+        return fill(statsMapper.sumByDate(from, to), null, from, to);
+    }
+
+    private static List<ShopDailyStats> fill(List<ShopDailyStats> rows, Long shopId, LocalDate from, LocalDate to) {
+        Map<LocalDate, ShopDailyStats> byDate = rows.stream()
+                .collect(Collectors.toMap(ShopDailyStats::getStatDate, Function.identity()));
+        List<ShopDailyStats> result = new ArrayList<>();
+        for (LocalDate d = from; !d.isAfter(to); d = d.plusDays(1)) {
+            ShopDailyStats row = byDate.get(d);
+            if (row == null) {
+                row = new ShopDailyStats();
+                row.setShopId(shopId);
+                row.setStatDate(d);
+            }
+            result.add(row);
+        }
+        return result;
+    }
+
+    // ==================== 重算 ====================
+
+    /**
+     * 后台按天重算 [from, to]，from 为空时从最早的订单开始，to 为空时到今天。
+     *
+     * @return 已有重算在进行时返回 false
+     */
+    public boolean startBackfill(LocalDate from, LocalDate to) {
+        if (!backfilling.compareAndSet(false, true)) {
+            return false;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                backfill(from, to);
+            } finally {
+                backfilling.set(false);
+            }
+        }, "daily-stats-backfill");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    public boolean isBackfilling() {
+        return backfilling.get();
+    }
+
+    /**
+     * 每天一个事务：汇总当天订单（锁住这些订单行），删掉当天的汇总行再写入，
+     * 订单已被删光的 (店铺, 日期) 不会留下旧数据。中途失败可以从失败的那天接着重跑。
+     */
+    private void backfill(LocalDate from, LocalDate to) {
+        long start = System.currentTimeMillis();
+        if (from == null) {
+            LocalDateTime min = statsMapper.minOrderTime();
+            if (min == null) {
+                log.info("没有订单，跳过每日汇总重算");
+                return;
+            }
+            from = min.toLocalDate();
+        }
+        if (to == null) {
+            to = LocalDate.now();
+        }
+        int days = 0;
+        try {
+            for (LocalDate d = from; !d.isAfter(to); d = d.plusDays(1)) {
+                rebuildDay(d);
+                days++;
+                if (backfillPauseMs > 0) Thread.sleep(backfillPauseMs);
+            }
+            log.info("每日汇总重算完成 {} ~ {}，共 {} 天，耗时 {}ms", from, to, days, System.currentTimeMillis() - start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("每日汇总重算被中断，已完成到 {}", from.plusDays(days - 1L));
+        } catch (Exception e) {
+            log.error("每日汇总重算失败，已完成到 {}，可从 {} 开始重跑", from.plusDays(days - 1L), from.plusDays(days), e);
+        }
+    }
+
+    /**
+     * 启动后在后台重算当天，保证“今日订单数”等直接读汇总的指标正确
+     * （新建的汇总表、或停机期间有别的实例写过订单）。历史数据需要手动调用重算接口。
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildTodayOnStartup() {
+        if (!rebuildTodayOnStartup) return;
+        Thread thread = new Thread(() -> {
+            LocalDate today = LocalDate.now();
+            try {
+                rebuildDay(today);
+                log.info("已重算当天 {} 的每日汇总", today);
+            } catch (Exception e) {
+                log.error("启动时重算当天每日汇总失败", e);
+            }
+        }, "daily-stats-today");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** 重算一天，遇到死锁/锁等待超时重试几次 */
+    public void rebuildDay(LocalDate day) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    List<ShopDailyStats> rows = statsMapper.aggregateRange(day.atStartOfDay(), day.plusDays(1).atStartOfDay());
+                    statsMapper.deleteDate(day);
+                    rows.forEach(statsMapper::addDelta);
+                });
+                return;
+            } catch (PessimisticLockingFailureException e) {
+                if (attempt >= 3) throw e;
+                log.warn("重算 {} 锁冲突，第 {} 次重试", day, attempt);
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package org.example.shop.service.impl;
+
+import org.example.shop.config.DbRouting;
+import org.example.shop.mapper.OrderMapper;
+import org.example.shop.mapper.ProductMapper;
+import org.example.shop.mapper.ShopMapper;
+import org.example.shop.mapper.UserMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 后台数据统计。
+ * 每张表一条 GROUP BY 查询算出全部指标，结果做成不可变快照定时刷新，
+ * 管理后台请求直接读快照，不随订单表大小变慢。
+ */
+@Service
+public class StatsServiceImpl {
+
+    @Autowired
+    private UserMapper userMapper;
+
+    @Autowired
+    private ShopMapper shopMapper;
+
+    @Autowired
+    private ProductMapper productMapper;
+
+    @Autowired
+    private OrderMapper orderMapper;
+
+    private volatile Map<String, Object> snapshot;
+
+    /** 当前快照；还没刷新过时同步算一次（并发首次访问多算几次也无妨） */
+    public Map<String, Object> getSnapshot() {
+        if (snapshot == null) {
+            refresh();
+        }
+        return snapshot;
+    }
+
+    @Scheduled(fixedDelayString = "${shop.stats.refresh-ms:60000}", initialDelayString = "${shop.stats.refresh-ms:60000}")
+    public void refresh() {
+        // 统计查询走从库（配置了的话）
+        snapshot = DbRouting.onReplica(this::build);
+    }
+
+    private Map<String, Object> build() {
+        Map<String, Long> users = countBy(userMapper.countByRole());
+        Map<String, Long> shops = countBy(shopMapper.countByStatus());
+        Map<String, Long> products = countBy(productMapper.countByOnSale());
+
+        List<Map<String, Object>> orderRows = orderMapper.sumByStatus();
+        Map<String, Long> orders = countBy(orderRows);
+        BigDecimal finishedAmount = BigDecimal.ZERO;
+        for (Map<String, Object> row : orderRows) {
+            if ("4".equals(String.valueOf(row.get("grp")))) {
+                finishedAmount = new BigDecimal(String.valueOf(row.get("amount")));
+            }
+        }
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("users", Map.of(
+                "total", total(users),
+                "user", users.getOrDefault("user", 0L),
+                "merchant", users.getOrDefault("merchant", 0L),
+                "admin", users.getOrDefault("admin", 0L)
+        ));
+
+        stats.put("shops", Map.of(
+                "total", total(shops),
+                "pending", shops.getOrDefault("0", 0L),
+                "approved", shops.getOrDefault("1", 0L),
+                "rejected", shops.getOrDefault("2", 0L)
+        ));
+
+        stats.put("products", Map.of(
+                "total", total(products),
+                "onSale", products.getOrDefault("1", 0L),
+                "offSale", products.getOrDefault("0", 0L)
+        ));
+
+        long finishedOrders = orders.getOrDefault("4", 0L);
+        stats.put("orders", Map.of(
+                "total", total(orders),
+                "pendingPay", orders.getOrDefault("1", 0L),
+                "pendingDeliver", orders.getOrDefault("2", 0L),
+                "delivering", orders.getOrDefault("3", 0L),
+                "finished", finishedOrders,
+                "cancelled", orders.getOrDefault("5", 0L)
+        ));
+
+        stats.put("sales", Map.of(
+                "totalAmount", finishedAmount,
+                "finishedCount", finishedOrders
+        ));
+        stats.put("refreshTime", LocalDateTime.now());
+
+        return Map.copyOf(stats);
+    }
+
+    /** 分组结果转成 分组值 -> 数量（分组值为 NULL 的记为 "null"） */
+    private static Map<String, Long> countBy(List<Map<String, Object>> rows) {
+        Map<String, Long> result = new HashMap<>();
+        for (Map<String, Object> row : rows) {
+            result.put(String.valueOf(row.get("grp")), ((Number) row.get("cnt")).longValue());
+        }
+        return result;
+    }
+
+    private static long total(Map<String, Long> counts) {
+        return counts.values().stream().mapToLong(Long::longValue).sum();
+    }
+}
@@ -0,0 +1,118 @@
+package org.example.shop.service.impl;
+
+import org.example.shop.entity.Product;
+import org.example.shop.mapper.ProductMapper;
+import org.example.shop.utils.CacheLoads;
+import org.example.shop.utils.TxUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 库存预扣。
+ * 数据库条件更新（stock >= ?）保证不超卖；内存计数器只是前置拦截，
+ * 售罄的热门商品直接在内存里拒绝，不再打到数据库。
+ * 计数器只会偏大（偏大时由数据库兜底），任何不确定的情况都直接丢弃、下次从库里重新加载。
+ */
+@Service
+public class StockServiceImpl {
+
+    // stock 为 NULL 的商品不限库存，不做内存拦截
+    private static final AtomicInteger UNLIMITED = new AtomicInteger(Integer.MAX_VALUE);
+
+    @Autowired
+    private ProductMapper productMapper;
+
+    @Value("${shop.stock.guard-enabled:true}")
+    private boolean guardEnabled;
+
+    private final Map<Long, AtomicInteger> counters = new ConcurrentHashMap<>();
+
+    // 计数器丢弃版本号，加载期间被丢弃过的计数器不放回（见 CacheLoads）
+    private final CacheLoads.Stamps stamps = new CacheLoads.Stamps();
+
+    /**
+     * 扣减库存，任一商品不足抛 IllegalArgumentException（外层事务负责回滚已扣部分）。
+     * 按商品 ID 升序更新，避免并发下单互相死锁。
+     *
+     * @param quantities productId -> 数量
+     */
+    public void deduct(Map<Long, Integer> quantities) {
+        Map<Long, Integer> sorted = new TreeMap<>(quantities);
+        List<Long> acquired = new ArrayList<>();
+        try {
+            for (Map.Entry<Long, Integer> e : sorted.entrySet()) {
+                if (!tryAcquire(e.getKey(), e.getValue())) {
+                    throw new IllegalArgumentException("商品库存不足");
+                }
+                acquired.add(e.getKey());
+            }
+            for (Map.Entry<Long, Integer> e : sorted.entrySet()) {
+                if (productMapper.deductStock(e.getKey(), e.getValue()) == 0) {
+                    throw new IllegalArgumentException("商品库存不足");
+                }
+            }
+        } catch (RuntimeException ex) {
+            acquired.forEach(this::drop);
+            throw ex;
+        }
+
+        // 事务回滚时内存里扣掉的也作废
+        TxUtil.afterCompletion(committed -> {
+            if (!committed) sorted.keySet().forEach(this::drop);
+        });
+    }
+
+    /** 回补库存（订单取消） */
+    public void restore(Map<Long, Integer> quantities) {
+        Map<Long, Integer> sorted = new TreeMap<>(quantities);
+        sorted.forEach((id, num) -> productMapper.restoreStock(id, num));
+        TxUtil.afterCompletion(committed -> sorted.keySet().forEach(this::drop));
+    }
+
+    /** 商品库存被直接修改后丢弃计数器 */
+    public void reset(Long productId) {
+        if (productId != null) drop(productId);
+    }
+
+    private void drop(Long productId) {
+        stamps.bump(productId);
+        counters.remove(productId);
+    }
+
+    private boolean tryAcquire(Long productId, int num) {
+        if (!guardEnabled) return true;
+        AtomicInteger counter = counters.get(productId);
+        if (counter == null) {
+            // 不用 computeIfAbsent：那样会在 ConcurrentHashMap 的桶锁里查库
+            long stamp = stamps.get(productId);
+            AtomicInteger loaded = loadCounter(productId);
+            // 加载期间库存被回补/修改过，读到的值可能偏小，这次不拦截，交给数据库条件更新
+            if (stamps.get(productId) != stamp) return true;
+            counter = counters.putIfAbsent(productId, loaded);
+            if (counter == null) {
+                counter = loaded;
+                if (stamps.get(productId) != stamp) {
+                    counters.remove(productId, loaded);
+                    return true;
+                }
+            }
+        }
+        if (counter == UNLIMITED) return true;
+        while (true) {
+            int current = counter.get();
+            if (current < num) return false;
+            if (counter.compareAndSet(current, current - num)) return true;
+        }
+    }
+
+    private AtomicInteger loadCounter(Long productId) {
+        Product p = productMapper.selectById(productId);
+        if (p == null || p.getStock() == null) return UNLIMITED;
+        return new AtomicInteger(p.getStock());
+    }
+}
@@ -0,0 +1,214 @@
+package org.example.shop.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.example.shop.service.StorageBackend;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 图片上传。
+ * 同步模式直接流式上传；异步模式先把文件落到本地临时文件，立即返回任务 ID，
+ * 由有界线程池上传，客户端按任务 ID 查询结果。图片上传后再生成缩略图。
+ */
+@Slf4j
+@Service
+public class UploadServiceImpl {
+
+    private final StorageBackend storage;
+
+    private final ImageServiceImpl imageService;
+
+    private final ThreadPoolExecutor executor;
+
+    // 任务 ID -> 任务，完成后保留一段时间供查询
+    private final Cache<String, UploadTask> tasks;
+
+    public UploadServiceImpl(StorageBackend storage,
+                             ImageServiceImpl imageService,
+                             @Value("${shop.upload.threads:8}") int threads,
+                             @Value("${shop.upload.queue-size:200}") int queueSize,
+                             @Value("${shop.upload.task-expire-seconds:600}") long taskExpireSeconds) {
+        this.storage = storage;
+        this.imageService = imageService;
+        AtomicInteger seq = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                r -> {
+                    Thread t = new Thread(r, "upload-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+        this.tasks = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(taskExpireSeconds))
+                .build();
+    }
+
+    @Data
+    public static class UploadTask {
+        private final String id;
+        private final Long ownerId;
+        // pending / done / failed
+        private volatile String status = "pending";
+        private volatile String url;
+        private volatile String error;
+    }
+
+    /** 同步上传，返回访问 URL */
+    public String upload(MultipartFile file) throws IOException {
+        if (!imageService.isImage(file.getOriginalFilename())) {
+            try (InputStream in = file.getInputStream()) {
+                return storage.save(StorageBackend.newKey(file.getOriginalFilename()), in, file.getSize());
+            }
+        }
+        String key = imageService.newKey(file.getOriginalFilename());
+        if (storage instanceof LocalStorageBackend local) {
+            // 本地存储：原图直接流式写入，缩略图从存好的文件生成
+            String url;
+            try (InputStream in = file.getInputStream()) {
+                url = storage.save(key, in, file.getSize());
+            }
+            imageService.generateAsync(key, local.resolve(key), false);
+            return url;
+        }
+        // OSS：上传原图的同时顺带写一份本地副本，缩略图从副本生成，不额外多读一遍
+        Path tmp = Files.createTempFile("upload-", ".tmp");
+        try {
+            String url;
+            try (InputStream in = new TeeInputStream(file.getInputStream(), Files.newOutputStream(tmp))) {
+                url = storage.save(key, in, file.getSize());
+            }
+            imageService.generateAsync(key, tmp, true);
+            return url;
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(tmp);
+            throw e;
+        }
+    }
+
+    /** 读取时把读到的字节同时写到另一个输出流，关闭时一起关闭 */
+    private static class TeeInputStream extends FilterInputStream {
+
+        private final OutputStream branch;
+
+        TeeInputStream(InputStream in, OutputStream branch) {
+            super(in);
+            this.branch = branch;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) branch.write(b);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            int n = super.read(buf, off, len);
+            if (n > 0) branch.write(buf, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // 跳过的字节也要写进副本
+            byte[] buf = new byte[(int) Math.min(n, 8192)];
+            long skipped = 0;
+            int r;
+            while (skipped < n && (r = read(buf, 0, (int) Math.min(buf.length, n - skipped))) > 0) {
+                skipped += r;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                branch.close();
+            }
+        }
+    }
+
+    /**
+     * 异步上传，立即返回任务。
+     * 请求结束后 MultipartFile 的临时文件会被清理，所以先转存一份。
+     *
+     * @throws RejectedExecutionException 排队已满
+     */
+    public UploadTask submit(MultipartFile file, Long ownerId) throws IOException {
+        Path tmp = Files.createTempFile("upload-", ".tmp");
+        file.transferTo(tmp);
+
+        UploadTask task = new UploadTask(UUID.randomUUID().toString().replace("-", ""), ownerId);
+        boolean image = imageService.isImage(file.getOriginalFilename());
+        String key = image
+                ? imageService.newKey(file.getOriginalFilename())
+                : StorageBackend.newKey(file.getOriginalFilename());
+        long size = file.getSize();
+        try {
+            executor.execute(() -> {
+                // FileInputStream：本地存储时可以直接做文件到文件的通道拷贝
+                try (InputStream in = new FileInputStream(tmp.toFile())) {
+                    task.setUrl(storage.save(key, in, size));
+                    task.setStatus("done");
+                    if (image) imageService.generate(key, tmp);
+                } catch (Exception e) {
+                    log.error("异步上传失败 task={}", task.getId(), e);
+                    task.setError(e.getMessage());
+                    task.setStatus("failed");
+                } finally {
+                    deleteQuietly(tmp);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            deleteQuietly(tmp);
+            throw e;
+        }
+        tasks.put(task.getId(), task);
+        return task;
+    }
+
+    /** 查询任务，不存在或不属于该用户返回 null */
+    public UploadTask getTask(String taskId, Long ownerId) {
+        UploadTask task = tasks.getIfPresent(taskId);
+        return task != null && task.getOwnerId().equals(ownerId) ? task : null;
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("删除上传临时文件失败 {}", path, e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warn("仍有 {} 个上传任务未完成", executor.getQueue().size() + executor.getActiveCount());
+        }
+    }
+}
@@ -4,12 +4,67 @@ package org.example.shop.service.impl;
 
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 
+import org.example.shop.config.DbRouting;
 import org.example.shop.entity.User;
 import org.example.shop.mapper.UserMapper;
+import org.example.shop.utils.CacheLoads;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.Map;
+
 @Service
 public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IService<User> {
 
-}
\ No newline at end of file
+    // 已登录用户缓存：userId -> User，给 @CurrentUser 注入用
+    private final Cache<Long, User> userCache;
+
+    // 失效版本号，见 CacheLoads
+    private final CacheLoads.Stamps stamps = new CacheLoads.Stamps();
+
+    public UserServiceImpl(@Value("${shop.cache.user.max-size:50000}") long maxSize,
+                           @Value("${shop.cache.user.expire-seconds:600}") long expireSeconds) {
+        this.userCache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(expireSeconds))
+                .recordStats()
+                .build();
+    }
+
+    /** 按 ID 读用户（走缓存，不存在返回 null） */
+    public User getCachedById(Long id) {
+        if (id == null) return null;
+        return CacheLoads.get(userCache, stamps, id, key -> DbRouting.onPrimary(() -> getById(key)));
+    }
+
+    public void evict(Long id) {
+        if (id == null) return;
+        stamps.bump(id);
+        userCache.invalidate(id);
+    }
+
+    public Map<String, Object> cacheStats() {
+        return ProductServiceImpl.toMap(userCache.stats(), userCache.estimatedSize());
+    }
+
+    // ===== 写操作统一失效缓存 =====
+
+    @Override
+    public boolean updateById(User entity) {
+        boolean ok = super.updateById(entity);
+        evict(entity.getId());
+        return ok;
+    }
+
+    @Override
+    public boolean removeById(Serializable id) {
+        boolean ok = super.removeById(id);
+        evict(id instanceof Long ? (Long) id : Long.valueOf(id.toString()));
+        return ok;
+    }
+}
@@ -0,0 +1,96 @@
+package org.example.shop.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+/**
+ * 本地缓存未命中时在锁外查库。
+ * Caffeine 的 cache.get(key, loader) 和 ConcurrentHashMap.computeIfAbsent 都在桶锁（synchronized）里执行 loader，
+ * 虚拟线程在里面做 JDBC 会钉住载体线程，同一个桶上的其他 key 也要排队。
+ * 这里先查缓存，未命中时在调用线程上加载，再 putIfAbsent 放回；并发未命中同一个 key 时可能各查一次库。
+ * <p>
+ * 失效方要先调用 {@link Stamps#bump} 再删缓存。加载前后 key 的版本变了说明期间有写入，
+ * 读到的可能是旧值，只返回给本次调用、不放进缓存。
+ */
+public final class CacheLoads {
+
+    private CacheLoads() {
+    }
+
+    public static <K, V> V get(Cache<K, V> cache, Stamps stamps, K key, Function<? super K, ? extends V> loader) {
+        V cached = cache.getIfPresent(key);
+        if (cached != null) return cached;
+
+        long stamp = stamps.get(key);
+        V loaded = loader.apply(key);
+        return loaded == null ? null : putIfFresh(cache.asMap(), stamps, stamp, key, loaded);
+    }
+
+    /** 批量读取，未命中的 key 一次交给 loader 加载；返回结果里只包含存在的 key */
+    public static <K, V> Map<K, V> getAll(Cache<K, V> cache, Stamps stamps, Collection<K> keys,
+                                          Function<? super Set<K>, ? extends Map<K, V>> loader) {
+        Map<K, V> result = new HashMap<>(cache.getAllPresent(keys));
+        Map<K, Long> missing = new HashMap<>();
+        for (K key : keys) {
+            if (!result.containsKey(key)) missing.put(key, stamps.get(key));
+        }
+        if (missing.isEmpty()) return result;
+
+        loader.apply(missing.keySet()).forEach((key, value) -> {
+            Long stamp = missing.get(key);
+            if (value != null && stamp != null) {
+                result.put(key, putIfFresh(cache.asMap(), stamps, stamp, key, value));
+            }
+        });
+        return result;
+    }
+
+    private static <K, V> V putIfFresh(ConcurrentMap<K, V> map, Stamps stamps, long stamp, K key, V loaded) {
+        if (stamps.get(key) != stamp) return loaded;
+        V existing = map.putIfAbsent(key, loaded);
+        if (existing != null) return existing;
+        // 放进去之后再确认一次：失效发生在检查和放入之间时撤回
+        if (stamps.get(key) != stamp) map.remove(key, loaded);
+        return loaded;
+    }
+
+    /** 按 key 哈希分段的失效版本号，只有同一段的 key 会互相影响 */
+    public static final class Stamps {
+
+        private static final int STRIPES = 64;
+
+        private final AtomicLongArray versions = new AtomicLongArray(STRIPES);
+
+        public long get(Object key) {
+            return versions.get(index(key));
+        }
+
+        /** 失效单个 key 之前调用 */
+        public void bump(Object key) {
+            versions.incrementAndGet(index(key));
+        }
+
+        public void bumpAll(Collection<?> keys) {
+            keys.forEach(this::bump);
+        }
+
+        /** 清空整个缓存之前调用 */
+        public void bumpAll() {
+            for (int i = 0; i < STRIPES; i++) {
+                versions.incrementAndGet(i);
+            }
+        }
+
+        private static int index(Object key) {
+            int h = key.hashCode();
+            return (h ^ (h >>> 16)) & (STRIPES - 1);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package org.example.shop.utils;
+
+import jakarta.annotation.PreDestroy;
+import org.example.shop.config.DbRouting;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 并发执行互不依赖的查询，总耗时约等于最慢的一个。
+ * <pre>
+ * try (FanOut.Scope scope = fanOut.open()) {
+ *     FanOut.Task&lt;Long&gt; a = scope.fork(() -> ...);
+ *     FanOut.Task&lt;Long&gt; b = scope.fork(() -> ...);
+ *     scope.join();
+ *     a.get() + b.get();
+ * }
+ * </pre>
+ * 任一任务失败或超时，join 取消其余任务（中断执行线程）并抛出异常；线程池满时在调用线程直接执行。
+ * MySQL 驱动读 socket 时不响应中断，所以子任务里的 SQL 还会按剩余时间设置 statement timeout
+ * （见 {@link #remainingMillis()} 和 StatementTimeoutInterceptor），超时后由服务端终止查询、释放连接。
+ * 读库选择（{@link DbRouting}）会带到子任务里；不要在事务里使用，子任务不在同一个事务中。
+ */
+@Component
+public class FanOut {
+
+    // 当前线程正在执行的子任务的截止时间（System.nanoTime），不在子任务里时为 null
+    private static final ThreadLocal<Long> DEADLINE = new ThreadLocal<>();
+
+    private final ThreadPoolExecutor executor;
+
+    private final Duration defaultTimeout;
+
+    public FanOut(@Value("${shop.fan-out.threads:16}") int threads,
+                  @Value("${shop.fan-out.queue-size:64}") int queueSize,
+                  @Value("${shop.fan-out.timeout-ms:2000}") long timeoutMs) {
+        AtomicInteger seq = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                r -> {
+                    Thread t = new Thread(r, "fan-out-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+        this.defaultTimeout = Duration.ofMillis(timeoutMs);
+    }
+
+    public Scope open() {
+        return new Scope();
+    }
+
+    /** 当前子任务距截止时间还剩多少毫秒（已超时返回 0）；不在子任务里返回 -1 */
+    public static long remainingMillis() {
+        Long deadline = DEADLINE.get();
+        if (deadline == null) return -1;
+        return Math.max(TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()), 0);
+    }
+
+    public class Scope implements AutoCloseable {
+
+        private final List<Task<?>> tasks = new ArrayList<>();
+
+        public <T> Task<T> fork(Supplier<T> call) {
+            return fork(call, defaultTimeout);
+        }
+
+        /** @param timeout 从 fork 开始算的超时时间 */
+        public <T> Task<T> fork(Supplier<T> call, Duration timeout) {
+            boolean replica = DbRouting.replicaPreferred();
+            Supplier<T> routed = replica ? () -> DbRouting.onReplica(call) : call;
+            long deadline = System.nanoTime() + timeout.toNanos();
+            // 用 submit 拿到 FutureTask，cancel(true) 才会中断执行线程（CompletableFuture 的 cancel 不会）
+            Task<T> task = new Task<>(executor.submit(() -> {
+                // 线程池满时在调用线程执行，结束后恢复调用线程原来的值
+                Long outer = DEADLINE.get();
+                DEADLINE.set(deadline);
+                try {
+                    return routed.get();
+                } finally {
+                    if (outer == null) DEADLINE.remove();
+                    else DEADLINE.set(outer);
+                }
+            }), deadline);
+            tasks.add(task);
+            return task;
+        }
+
+        /** 等待全部任务完成 */
+        public void join() {
+            try {
+                for (Task<?> task : tasks) {
+                    task.await();
+                }
+            } catch (RuntimeException e) {
+                close();
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() {
+            for (Task<?> task : tasks) {
+                task.future.cancel(true);
+            }
+        }
+    }
+
+    public static class Task<T> {
+
+        private final Future<T> future;
+
+        private final long deadlineNanos;
+
+        Task(Future<T> future, long deadlineNanos) {
+            this.future = future;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        void await() {
+            try {
+                future.get(Math.max(deadlineNanos - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                throw new IllegalStateException("查询超时", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof RuntimeException re ? re : new IllegalStateException(cause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("查询被中断", e);
+            }
+        }
+
+        /** join 之后取结果 */
+        public T get() {
+            if (!future.isDone() || future.isCancelled()) return null;
+            try {
+                return future.get();
+            } catch (InterruptedException | ExecutionException e) {
+                return null;
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -1,6 +1,7 @@
 // src/main/java/org/example/shop/utils/JwtAuthenticationFilter.java
 package org.example.shop.utils;
 
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -29,9 +30,13 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         if (StringUtils.hasText(header) && header.startsWith("Bearer ")) {
             String token = header.substring(7);
 
-            // 使用新版安全方法
-            Long userId = jwtUtil.getUserId(token);
-            String role = jwtUtil.getRole(token);
+            // 只验签一次，结果留给 CurrentUserResolver 复用
+            Claims claims = jwtUtil.getClaims(token);
+            if (claims != null) {
+                request.setAttribute(JwtUtil.CLAIMS_ATTRIBUTE, claims);
+            }
+            Long userId = jwtUtil.getUserId(claims);
+            String role = jwtUtil.getRole(claims);
 
             if (userId != null && role != null) {
                 // 构造一个简单的 Authentication 对象放进 Security 上下文
@@ -1,15 +1,22 @@
 package org.example.shop.utils;
 
+import com.aliyun.oss.ClientBuilderConfiguration;
 import com.aliyun.oss.OSS;
 import com.aliyun.oss.OSSClientBuilder;
-import com.aliyun.oss.model.PutObjectRequest;
+import com.aliyun.oss.model.*;
+import jakarta.annotation.PreDestroy;
 import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.example.shop.service.StorageBackend;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
 import java.io.InputStream;
-import java.util.UUID;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
 
+@Slf4j
 @Component
 @ConfigurationProperties(prefix = "aliyun.oss")
 @Data
@@ -21,6 +28,45 @@ public class OssUtil {
     private String bucketName;
     private String domain;
 
+    // 连接池与超时（客户端全局共用一个，复用连接）
+    private int maxConnections = 128;
+    private int connectTimeoutMs = 5000;
+    private int socketTimeoutMs = 30000;
+
+    // 超过该大小走分片上传，按分片流式读取，不整体缓存
+    private long multipartThreshold = 8 * 1024 * 1024;
+    private long partSize = 5 * 1024 * 1024;
+
+    private volatile OSS client;
+
+    private final ReentrantLock clientLock = new ReentrantLock();
+
+    /** 首次使用时创建客户端（未配置 OSS 的环境不影响启动） */
+    private OSS client() {
+        OSS c = client;
+        if (c != null) return c;
+        clientLock.lock();
+        try {
+            if (client == null) {
+                ClientBuilderConfiguration conf = new ClientBuilderConfiguration();
+                conf.setMaxConnections(maxConnections);
+                conf.setConnectionTimeout(connectTimeoutMs);
+                conf.setSocketTimeout(socketTimeoutMs);
+                client = new OSSClientBuilder().build(endpoint, accessKeyId, accessKeySecret, conf);
+            }
+            return client;
+        } finally {
+            clientLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (client != null) {
+            client.shutdown();
+        }
+    }
+
     /**
      * 上传文件到OSS
      * @param inputStream 文件输入流
@@ -28,42 +74,65 @@ public class OssUtil {
      * @return 文件访问URL
      */
     public String uploadFile(InputStream inputStream, String originalFileName) {
-        OSS ossClient = null;
-        try {
-            // 创建OSS客户端
-            ossClient = new OSSClientBuilder().build(endpoint, accessKeyId, accessKeySecret);
-
-            // 生成文件路径：使用时间戳 + UUID + 文件后缀
-            String fileExtension = "";
-            if (originalFileName != null && originalFileName.contains(".")) {
-                fileExtension = originalFileName.substring(originalFileName.lastIndexOf("."));
-            }
-            String fileName = "shop/" + System.currentTimeMillis() + "_" + UUID.randomUUID().toString().replace("-", "") + fileExtension;
+        return uploadFile(inputStream, originalFileName, -1);
+    }
 
-            // 上传文件
-            PutObjectRequest putObjectRequest = new PutObjectRequest(bucketName, fileName, inputStream);
-            ossClient.putObject(putObjectRequest);
+    /**
+     * 上传文件到OSS，已知大小且超过阈值时分片上传
+     * @param size 文件大小，未知传 -1
+     */
+    public String uploadFile(InputStream inputStream, String originalFileName, long size) {
+        return upload(StorageBackend.newKey(originalFileName), inputStream, size);
+    }
 
-            // 构建文件访问URL
-            // 如果配置了domain则使用domain，否则自动构建
-            String fileUrl;
-            if (domain != null && !domain.trim().isEmpty()) {
-                // 使用配置的domain（可以是自定义域名）
-                fileUrl = domain.endsWith("/") ? domain + fileName : domain + "/" + fileName;
+    /**
+     * 按指定路径上传
+     * @return 文件访问URL
+     */
+    public String upload(String fileName, InputStream inputStream, long size) {
+        try {
+            if (size > multipartThreshold) {
+                multipartUpload(fileName, inputStream, size);
             } else {
-                // 自动构建：https://{bucketName}.{endpoint}/{fileName}
-                fileUrl = "https://" + bucketName + "." + endpoint + "/" + fileName;
+                PutObjectRequest putObjectRequest = new PutObjectRequest(bucketName, fileName, inputStream);
+                client().putObject(putObjectRequest);
             }
-            
-            return fileUrl;
+            return urlOf(fileName);
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("OSS 上传失败", e);
             throw new RuntimeException("文件上传失败: " + e.getMessage());
-        } finally {
-            if (ossClient != null) {
-                ossClient.shutdown();
+        }
+    }
+
+    /** 构建文件访问URL：配置了domain（可以是自定义域名）则使用domain，否则 https://{bucketName}.{endpoint}/{fileName} */
+    public String urlOf(String fileName) {
+        if (domain != null && !domain.trim().isEmpty()) {
+            return domain.endsWith("/") ? domain + fileName : domain + "/" + fileName;
+        }
+        return "https://" + bucketName + "." + endpoint + "/" + fileName;
+    }
+
+    /** 分片上传：依次从流中读取每个分片上传，失败时取消，避免残留碎片 */
+    private void multipartUpload(String fileName, InputStream inputStream, long size) {
+        OSS oss = client();
+        String uploadId = oss.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucketName, fileName)).getUploadId();
+        try {
+            List<PartETag> etags = new ArrayList<>();
+            int partNumber = 1;
+            for (long offset = 0; offset < size; offset += partSize, partNumber++) {
+                UploadPartRequest part = new UploadPartRequest();
+                part.setBucketName(bucketName);
+                part.setKey(fileName);
+                part.setUploadId(uploadId);
+                part.setPartNumber(partNumber);
+                part.setPartSize(Math.min(partSize, size - offset));
+                part.setInputStream(inputStream);
+                etags.add(oss.uploadPart(part).getPartETag());
             }
+            oss.completeMultipartUpload(new CompleteMultipartUploadRequest(bucketName, fileName, uploadId, etags));
+        } catch (RuntimeException e) {
+            oss.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, fileName, uploadId));
+            throw e;
         }
     }
 }
-
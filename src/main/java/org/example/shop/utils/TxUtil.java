@@ -0,0 +1,36 @@
+package org.example.shop.utils;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.function.Consumer;
+
+/**
+ * 事务回调工具：在当前事务结束后执行，没有事务时立即执行。
+ */
+public class TxUtil {
+
+    private TxUtil() {
+    }
+
+    /** 事务提交后执行（回滚则不执行） */
+    public static void afterCommit(Runnable action) {
+        afterCompletion(committed -> {
+            if (committed) action.run();
+        });
+    }
+
+    /** 事务结束后执行，参数表示是否提交成功 */
+    public static void afterCompletion(Consumer<Boolean> callback) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            callback.accept(true);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                callback.accept(status == STATUS_COMMITTED);
+            }
+        });
+    }
+}
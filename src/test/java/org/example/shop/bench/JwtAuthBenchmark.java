@@ -0,0 +1,79 @@
+package org.example.shop.bench;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import org.example.shop.common.JwtUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.crypto.SecretKey;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每个请求的 JWT 鉴权开销。
+ * <ul>
+ *     <li>perRequestBefore：改动前的做法，过滤器和 CurrentUserResolver 分别取 userId/role，每次新建解析器并验签，共 4 次</li>
+ *     <li>perRequestUncached：改动后缓存未命中（新 token），复用解析器只验签 1 次，另加一次 SHA-256</li>
+ *     <li>perRequestCached：改动后缓存命中，只算 SHA-256 和查缓存</li>
+ * </ul>
+ * 运行：mvn -Pbench test-compile exec:exec -Dbench=JwtAuthBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtAuthBenchmark {
+
+    private JwtUtil cached;
+
+    private JwtUtil uncached;
+
+    private SecretKey key;
+
+    private String token;
+
+    @Setup
+    public void setUp() {
+        cached = new JwtUtil(50000, 600);
+        // 容量 0：每次都验签，相当于每个请求都是没见过的 token
+        uncached = new JwtUtil(0, 600);
+        key = (SecretKey) ReflectionTestUtils.getField(cached, "SECRET_KEY");
+        token = cached.generateToken(10001L, "user");
+        cached.getClaims(token);
+    }
+
+    @Benchmark
+    public void perRequestBefore(Blackhole bh) {
+        // 过滤器：getUserId + getRole；CurrentUserResolver：getUserId + getRole
+        for (int i = 0; i < 4; i++) {
+            Claims claims = Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(token).getBody();
+            bh.consume(claims.getSubject());
+        }
+    }
+
+    @Benchmark
+    public void perRequestUncached(Blackhole bh) {
+        Claims claims = uncached.getClaims(token);
+        bh.consume(uncached.getUserId(claims));
+        bh.consume(uncached.getRole(claims));
+    }
+
+    @Benchmark
+    public void perRequestCached(Blackhole bh) {
+        Claims claims = cached.getClaims(token);
+        bh.consume(cached.getUserId(claims));
+        bh.consume(cached.getRole(claims));
+    }
+}
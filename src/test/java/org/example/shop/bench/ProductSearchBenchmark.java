@@ -0,0 +1,100 @@
+package org.example.shop.bench;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.example.shop.mapper.ProductMapper;
+import org.example.shop.service.impl.ProductSearchServiceImpl;
+import org.example.shop.support.EmbeddedDb;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 商品名称搜索：进程内倒排索引 vs 数据库 LIKE '%keyword%'。
+ * 两边用同一个 ProductSearchServiceImpl.search，LIKE 一侧关闭索引（shop.search.enabled=false），
+ * 数据库是内嵌 H2（MySQL 模式），绝对值和线上 MySQL 不同，看的是全表扫描随商品数增长的趋势。
+ * 参数和用户端搜索一致：只搜上架商品，第一页 20 条。
+ * 运行：mvn -Pbench test-compile exec:exec -Dbench=ProductSearchBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class ProductSearchBenchmark {
+
+    private static final String[] BRANDS = {"华为", "小米", "苹果", "联想", "索尼", "Anker", "Apple", "Xiaomi", "Logitech", "Sony"};
+    private static final String[] CATEGORIES = {"手机", "蓝牙耳机", "机械键盘", "无线鼠标", "充电宝", "显示器", "保温杯", "运动鞋",
+            "双肩包", "台灯", "Pro Max", "Air", "Mini"};
+
+    @Param({"1000000"})
+    public int products;
+
+    @Param({"手机", "蓝牙耳机", "pro"})
+    public String keyword;
+
+    private HikariDataSource ds;
+
+    private ProductSearchServiceImpl index;
+
+    private ProductSearchServiceImpl like;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        ds = EmbeddedDb.h2("search-bench", "db/product.sql");
+        JdbcTemplate jdbc = new JdbcTemplate(ds);
+        List<Object[]> batch = new ArrayList<>();
+        for (int i = 1; i <= products; i++) {
+            String name = BRANDS[i % BRANDS.length] + " " + CATEGORIES[(i / 7) % CATEGORIES.length] + " 型号" + i;
+            batch.add(new Object[]{i, (long) (i % 5000), name, i % 10 == 0 ? 0 : 1, i % 997});
+            if (batch.size() == 5000 || i == products) {
+                jdbc.batchUpdate("INSERT INTO product (id, shop_id, name, is_on_sale, sales, create_time) " +
+                        "VALUES (?, ?, ?, ?, ?, CURRENT_TIMESTAMP)", batch);
+                batch.clear();
+            }
+        }
+        ProductMapper mapper = EmbeddedDb.mybatis(ds, ProductMapper.class).getMapper(ProductMapper.class);
+
+        index = service(mapper, true);
+        index.rebuild();
+        like = service(mapper, false);
+    }
+
+    private static ProductSearchServiceImpl service(ProductMapper mapper, boolean enabled) {
+        ProductSearchServiceImpl service = new ProductSearchServiceImpl();
+        ReflectionTestUtils.setField(service, "productMapper", mapper);
+        ReflectionTestUtils.setField(service, "enabled", enabled);
+        return service;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ds.close();
+    }
+
+    @Benchmark
+    public ProductSearchServiceImpl.SearchResult invertedIndex() {
+        return index.search(keyword, null, 1, 1, 20);
+    }
+
+    @Benchmark
+    public ProductSearchServiceImpl.SearchResult likeScan() {
+        return like.search(keyword, null, 1, 1, 20);
+    }
+}
@@ -0,0 +1,149 @@
+package org.example.shop.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.example.shop.support.EmbeddedDb;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 读写分离集成测试：两个内嵌库分别当主库和从库，数据源按 DataSourceConfig 的方式组装
+ * （ReadWriteRoutingDataSource 外包 LazyConnectionDataSourceProxy），通过 @Transactional 和 DbRouting 验证路由。
+ */
+@SpringJUnitConfig(ReadWriteRoutingDataSourceTest.Config.class)
+class ReadWriteRoutingDataSourceTest {
+
+    @Configuration
+    @EnableTransactionManagement
+    static class Config {
+
+        @Bean(destroyMethod = "close")
+        HikariDataSource primary() {
+            return EmbeddedDb.h2("primary", "db/routing.sql");
+        }
+
+        @Bean(destroyMethod = "close")
+        HikariDataSource replica() {
+            return EmbeddedDb.h2("replica", "db/routing.sql");
+        }
+
+        @Bean(destroyMethod = "close")
+        ReadWriteRoutingDataSource routingDataSource(HikariDataSource primary, HikariDataSource replica) {
+            return new ReadWriteRoutingDataSource(primary, List.of(replica), 30000);
+        }
+
+        @Bean
+        @Primary
+        DataSource dataSource(ReadWriteRoutingDataSource routingDataSource) {
+            return new DataSourceConfig().dataSource(routingDataSource);
+        }
+
+        @Bean
+        PlatformTransactionManager transactionManager(DataSource dataSource) {
+            return new DataSourceTransactionManager(dataSource);
+        }
+
+        @Bean
+        ItemRepository itemRepository(DataSource dataSource) {
+            return new ItemRepository(new JdbcTemplate(dataSource));
+        }
+    }
+
+    static class ItemRepository {
+
+        final JdbcTemplate jdbc;
+
+        ItemRepository(JdbcTemplate jdbc) {
+            this.jdbc = jdbc;
+        }
+
+        @Transactional
+        public String insert(long id, String name) {
+            jdbc.update("INSERT INTO item (id, name) VALUES (?, ?)", id, name);
+            return currentDb();
+        }
+
+        @Transactional(readOnly = true)
+        public String readOnlyTx() {
+            return currentDb();
+        }
+
+        /** 写事务里即使标记了可用从库也走主库 */
+        @Transactional
+        public String replicaPreferredInWriteTx() {
+            return DbRouting.onReplica(this::currentDb);
+        }
+
+        public String currentDb() {
+            return jdbc.queryForObject("SELECT name FROM db_name", String.class);
+        }
+    }
+
+    @Autowired
+    private HikariDataSource primary;
+
+    @Autowired
+    private HikariDataSource replica;
+
+    @Autowired
+    private ItemRepository repository;
+
+    @BeforeEach
+    void markDatabases() {
+        for (HikariDataSource ds : List.of(primary, replica)) {
+            JdbcTemplate jdbc = new JdbcTemplate(ds);
+            jdbc.update("DELETE FROM db_name");
+            jdbc.update("DELETE FROM item");
+        }
+        new JdbcTemplate(primary).update("INSERT INTO db_name (name) VALUES ('primary')");
+        new JdbcTemplate(replica).update("INSERT INTO db_name (name) VALUES ('replica')");
+    }
+
+    @Test
+    void transactionalWriteGoesToPrimary() {
+        assertEquals("primary", repository.insert(1, "手机"));
+
+        assertEquals(1, count(primary));
+        assertEquals(0, count(replica));
+    }
+
+    @Test
+    void readOnlyTransactionGoesToReplica() {
+        assertEquals("replica", repository.readOnlyTx());
+    }
+
+    @Test
+    void onReplicaReadGoesToReplica() {
+        assertEquals("replica", DbRouting.onReplica(repository::currentDb));
+    }
+
+    @Test
+    void plainReadDefaultsToPrimary() {
+        assertEquals("primary", repository.currentDb());
+        assertEquals("primary", DbRouting.onPrimary(repository::currentDb));
+    }
+
+    @Test
+    void writeTransactionIgnoresReplicaPreference() {
+        assertEquals("primary", repository.replicaPreferredInWriteTx());
+    }
+
+    private static int count(DataSource ds) {
+        Integer n = new JdbcTemplate(ds).queryForObject("SELECT COUNT(*) FROM item", Integer.class);
+        return n == null ? 0 : n;
+    }
+}
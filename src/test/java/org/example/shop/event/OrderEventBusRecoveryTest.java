@@ -0,0 +1,161 @@
+package org.example.shop.event;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zaxxer.hikari.HikariDataSource;
+import org.example.shop.entity.Order;
+import org.example.shop.mapper.OrderOutboxMapper;
+import org.example.shop.support.EmbeddedDb;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 发件箱崩溃恢复：事务提交后、转发前进程退出，或转发到一半进程退出，
+ * 重启后的实例都能把事件补发出去，且订阅者在库里的副作用每个事件只生效一次。
+ * 不启动转发线程，直接调用 relayBatch；“崩溃”用订阅者抛出 Error 模拟，
+ * 和进程退出一样不会走逐条重试，转发事务回滚（连接断开时数据库同样回滚）。
+ */
+class OrderEventBusRecoveryTest {
+
+    private HikariDataSource ds;
+    private OrderOutboxMapper outboxMapper;
+    private TransactionTemplate transactionTemplate;
+    private JdbcTemplate jdbc;
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ds = EmbeddedDb.h2("outbox", "db/order_outbox.sql");
+        outboxMapper = EmbeddedDb.mybatis(ds, OrderOutboxMapper.class).getMapper(OrderOutboxMapper.class);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(ds));
+        jdbc = new JdbcTemplate(ds);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ds.close();
+    }
+
+    @Test
+    void eventsCommittedBeforeCrashAreRelayedAfterRestart() {
+        // 第一个实例：订单事务提交，唤醒信号随进程丢失，转发线程没来得及跑
+        OrderEventBus crashed = bus(new RecordingListener(false));
+        transactionTemplate.executeWithoutResult(s -> {
+            for (long orderId = 1; orderId <= 3; orderId++) {
+                crashed.publish(OrderEvent.of(order(orderId), null, 1));
+            }
+        });
+        assertEquals(3, pending());
+
+        RecordingListener listener = new RecordingListener(false);
+        OrderEventBus restarted = bus(listener);
+        assertEquals(3, relay(restarted));
+        assertEquals(0, relay(restarted));
+
+        assertEquals(List.of(1L, 2L, 3L), listener.delivered);
+        assertEquals(3, effects());
+        assertEquals(0, pending());
+    }
+
+    @Test
+    void crashMidRelayRedeliversBatchExactlyOnce() {
+        OrderEventBus publisher = bus(new RecordingListener(false));
+        transactionTemplate.executeWithoutResult(s -> {
+            for (long orderId = 1; orderId <= 5; orderId++) {
+                publisher.publish(OrderEvent.of(order(orderId), null, 1));
+            }
+        });
+
+        // 订阅者写了一部分副作用后进程退出：转发事务回滚，事件和副作用都回到转发前
+        RecordingListener dying = new RecordingListener(true);
+        OrderEventBus crashed = bus(dying);
+        assertThrows(SimulatedCrash.class, () -> relay(crashed));
+        assertEquals(5, dying.delivered.size());
+        assertEquals(0, effects());
+        assertEquals(5, pending());
+
+        RecordingListener listener = new RecordingListener(false);
+        OrderEventBus restarted = bus(listener);
+        assertEquals(5, relay(restarted));
+        assertEquals(0, relay(restarted));
+
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L), listener.delivered);
+        assertEquals(5, effects());
+        assertEquals(0, pending());
+        assertEquals(5L, jdbc.queryForObject("SELECT COUNT(*) FROM order_outbox WHERE status = 1", Long.class));
+    }
+
+    private OrderEventBus bus(OrderEventListener listener) {
+        StaticListableBeanFactory beans = new StaticListableBeanFactory(Map.of("listener", listener));
+        OrderEventBus bus = new OrderEventBus(outboxMapper, objectMapper, transactionTemplate,
+                beans.getBeanProvider(OrderEventListener.class), 200, 1000, 10, 72);
+        ReflectionTestUtils.setField(bus, "listeners", List.of(listener));
+        return bus;
+    }
+
+    private static int relay(OrderEventBus bus) {
+        Integer n = ReflectionTestUtils.invokeMethod(bus, "relayBatch");
+        return n == null ? 0 : n;
+    }
+
+    private long pending() {
+        return jdbc.queryForObject("SELECT COUNT(*) FROM order_outbox WHERE status = 0", Long.class);
+    }
+
+    private long effects() {
+        return jdbc.queryForObject("SELECT COUNT(*) FROM event_effect", Long.class);
+    }
+
+    private static Order order(long id) {
+        Order order = new Order();
+        order.setId(id);
+        order.setOrderNo("NO" + id);
+        order.setUserId(100L);
+        order.setShopId(10L);
+        order.setTotalAmount(new BigDecimal("9.90"));
+        order.setCreateTime(LocalDateTime.now());
+        return order;
+    }
+
+    private static class SimulatedCrash extends Error {
+        SimulatedCrash() {
+            super("simulated crash");
+        }
+    }
+
+    /** 在转发事务里写副作用表；crash 为 true 时写完第一条后“进程退出” */
+    private class RecordingListener implements OrderEventListener {
+
+        private final boolean crash;
+
+        private final List<Long> delivered = new CopyOnWriteArrayList<>();
+
+        RecordingListener(boolean crash) {
+            this.crash = crash;
+        }
+
+        @Override
+        public void onOrderEvents(List<OrderEvent> events) {
+            events.forEach(event -> delivered.add(event.getOrderId()));
+            for (OrderEvent event : events) {
+                jdbc.update("INSERT INTO event_effect (order_id, event_type) VALUES (?, ?)",
+                        event.getOrderId(), event.getType().name());
+                if (crash) throw new SimulatedCrash();
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package org.example.shop.service.impl;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.example.shop.entity.Order;
+import org.example.shop.entity.OrderItem;
+import org.example.shop.entity.ShopDailyStats;
+import org.example.shop.mapper.OrderItemMapper;
+import org.example.shop.mapper.ShopDailyStatsMapper;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ShopDailyStatsServiceImplTest {
+
+    @Mock
+    private ShopDailyStatsMapper statsMapper;
+
+    @Mock
+    private OrderItemMapper orderItemMapper;
+
+    @InjectMocks
+    private ShopDailyStatsServiceImpl service;
+
+    @BeforeAll
+    static void initTableInfo() {
+        // itemCount 里的 select(OrderItem::getNum) 需要实体的 lambda 缓存
+        TableInfoHelper.initTableInfo(new MapperBuilderAssistant(new MybatisConfiguration(), ""), OrderItem.class);
+    }
+
+    @Test
+    void submitCountsNewOrder() {
+        Order order = order();
+
+        service.onOrderChange(order, null, 1);
+
+        ShopDailyStats delta = captureDelta();
+        assertEquals(order.getCreateTime().toLocalDate(), delta.getStatDate());
+        assertEquals(1L, delta.getOrders());
+        assertEquals(0L, delta.getPaidOrders());
+        assertEquals(0L, delta.getCancelledOrders());
+        assertEquals(0, BigDecimal.ZERO.compareTo(delta.getGmv()));
+    }
+
+    @Test
+    void deleteUnpaidOrderOnlyDecrementsOrders() {
+        service.onOrderChange(order(), 1, null);
+
+        ShopDailyStats delta = captureDelta();
+        assertEquals(-1L, delta.getOrders());
+        assertEquals(0L, delta.getPaidOrders());
+        verify(orderItemMapper, never()).selectList(any());
+    }
+
+    @Test
+    void deletePaidOrderRemovesSales() {
+        when(orderItemMapper.selectList(any())).thenReturn(List.of(item(2), item(3)));
+
+        service.onOrderChange(order(), 3, null);
+
+        ShopDailyStats delta = captureDelta();
+        assertEquals(-1L, delta.getOrders());
+        assertEquals(-1L, delta.getPaidOrders());
+        assertEquals(0, new BigDecimal("-99.50").compareTo(delta.getGmv()));
+        assertEquals(-5L, delta.getItemsSold());
+    }
+
+    @Test
+    void deleteCancelledOrderRemovesCancelCount() {
+        service.onOrderChange(order(), 5, null);
+
+        ShopDailyStats delta = captureDelta();
+        assertEquals(-1L, delta.getOrders());
+        assertEquals(-1L, delta.getCancelledOrders());
+        assertEquals(0L, delta.getPaidOrders());
+    }
+
+    private ShopDailyStats captureDelta() {
+        ArgumentCaptor<ShopDailyStats> captor = ArgumentCaptor.forClass(ShopDailyStats.class);
+        verify(statsMapper).addDelta(captor.capture());
+        return captor.getValue();
+    }
+
+    private static Order order() {
+        Order order = new Order();
+        order.setId(1L);
+        order.setShopId(10L);
+        order.setTotalAmount(new BigDecimal("99.50"));
+        order.setCreateTime(LocalDateTime.of(2024, 5, 1, 10, 30));
+        return order;
+    }
+
+    private static OrderItem item(int num) {
+        OrderItem item = new OrderItem();
+        item.setNum(num);
+        return item;
+    }
+}
@@ -0,0 +1,88 @@
+package org.example.shop.service.impl;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.example.shop.entity.Product;
+import org.example.shop.mapper.ProductMapper;
+import org.example.shop.support.EmbeddedDb;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 多个线程同时抢最后几件库存：成功数必须正好等于库存，库存不能扣成负数。
+ */
+class StockServiceImplConcurrencyTest {
+
+    private static final int STOCK = 10;
+    private static final int BUYERS = 64;
+
+    private HikariDataSource ds;
+    private ProductMapper productMapper;
+    private StockServiceImpl stockService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ds = EmbeddedDb.h2("stock", "db/product.sql");
+        productMapper = EmbeddedDb.mybatis(ds, ProductMapper.class).getMapper(ProductMapper.class);
+        stockService = new StockServiceImpl();
+        ReflectionTestUtils.setField(stockService, "productMapper", productMapper);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ds.close();
+    }
+
+    @ParameterizedTest(name = "guardEnabled={0}")
+    @ValueSource(booleans = {true, false})
+    void lastUnitsAreSoldExactlyOnce(boolean guardEnabled) throws Exception {
+        ReflectionTestUtils.setField(stockService, "guardEnabled", guardEnabled);
+        Product product = new Product();
+        product.setName("限量款");
+        product.setStock(STOCK);
+        productMapper.insert(product);
+        Long id = product.getId();
+
+        AtomicInteger sold = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(BUYERS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < BUYERS; i++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                try {
+                    stockService.deduct(Map.of(id, 1));
+                    sold.incrementAndGet();
+                } catch (IllegalArgumentException e) {
+                    rejected.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> f : futures) {
+            f.get();
+        }
+        pool.shutdown();
+
+        Product after = productMapper.selectById(id);
+        assertEquals(STOCK, sold.get());
+        assertEquals(BUYERS - STOCK, rejected.get());
+        assertEquals(0, after.getStock());
+        assertEquals(STOCK, after.getSales());
+    }
+}
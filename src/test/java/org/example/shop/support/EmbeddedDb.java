@@ -0,0 +1,54 @@
+package org.example.shop.support;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.extension.spring.MybatisSqlSessionFactoryBean;
+import com.zaxxer.hikari.HikariDataSource;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.example.shop.config.MyBatisPlusConfig;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import javax.sql.DataSource;
+import java.util.UUID;
+
+/**
+ * 测试用内嵌 H2（MySQL 兼容模式），不启动整个应用，只把要测的 mapper 挂上去。
+ */
+public final class EmbeddedDb {
+
+    private EmbeddedDb() {
+    }
+
+    /** 新建一个独立的内存库并执行 classpath 下的建表脚本 */
+    public static HikariDataSource h2(String name, String... scripts) {
+        HikariDataSource ds = new HikariDataSource();
+        ds.setPoolName(name);
+        ds.setJdbcUrl("jdbc:h2:mem:" + name + "-" + UUID.randomUUID()
+                + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000");
+        ds.setUsername("sa");
+        ds.setMaximumPoolSize(16);
+        ResourceDatabasePopulator populator = new ResourceDatabasePopulator();
+        for (String script : scripts) {
+            populator.addScript(new ClassPathResource(script));
+        }
+        populator.execute(ds);
+        return ds;
+    }
+
+    /** 按应用里的 mybatis-plus 配置（下划线转驼峰、分页插件）注册 mapper；没有 Spring 事务时每条语句自动提交 */
+    public static SqlSessionTemplate mybatis(DataSource ds, Class<?>... mappers) throws Exception {
+        MybatisConfiguration configuration = new MybatisConfiguration();
+        configuration.setMapUnderscoreToCamelCase(true);
+        MybatisSqlSessionFactoryBean factory = new MybatisSqlSessionFactoryBean();
+        factory.setDataSource(ds);
+        factory.setConfiguration(configuration);
+        // 和应用一样挂分页插件，selectPage 才会带 LIMIT
+        factory.setPlugins(new MyBatisPlusConfig().mybatisPlusInterceptor());
+        SqlSessionFactory sqlSessionFactory = factory.getObject();
+        for (Class<?> mapper : mappers) {
+            sqlSessionFactory.getConfiguration().addMapper(mapper);
+        }
+        return new SqlSessionTemplate(sqlSessionFactory);
+    }
+}
@@ -0,0 +1,18 @@
+CREATE TABLE order_outbox (
+  id BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+  event_type VARCHAR(32) NOT NULL,
+  order_id BIGINT DEFAULT NULL,
+  payload TEXT NOT NULL,
+  status TINYINT NOT NULL DEFAULT 0,
+  attempts INT NOT NULL DEFAULT 0,
+  last_error VARCHAR(500) DEFAULT NULL,
+  create_time TIMESTAMP DEFAULT NULL,
+  processed_time TIMESTAMP DEFAULT NULL
+);
+
+-- 测试订阅者在转发事务里写入的副作用，主键保证同一事件只生效一次
+CREATE TABLE event_effect (
+  order_id BIGINT NOT NULL,
+  event_type VARCHAR(32) NOT NULL,
+  PRIMARY KEY (order_id, event_type)
+);
@@ -0,0 +1,11 @@
+CREATE TABLE product (
+  id BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+  shop_id BIGINT DEFAULT NULL,
+  name VARCHAR(255) DEFAULT NULL,
+  image VARCHAR(255) DEFAULT NULL,
+  price DECIMAL(10,2) DEFAULT NULL,
+  stock INT DEFAULT NULL,
+  sales INT DEFAULT 0,
+  is_on_sale INT DEFAULT 1,
+  create_time TIMESTAMP DEFAULT NULL
+);
@@ -0,0 +1,9 @@
+-- 读写分离测试：主库和从库各建一份，db_name 里写库名，查询结果能看出连接来自哪个库
+CREATE TABLE db_name (
+  name VARCHAR(16) NOT NULL
+);
+
+CREATE TABLE item (
+  id BIGINT NOT NULL PRIMARY KEY,
+  name VARCHAR(64) DEFAULT NULL
+);